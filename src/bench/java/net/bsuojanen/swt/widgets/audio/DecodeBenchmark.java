@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening a file: header, decode and summary (PeakPyramid), with no cache.
+ * WAVE files go through the memory-mapped reader and AIFF files through
+ * Java Sound, so the two paths can be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecodeBenchmark {
+
+	@Param({ "8", "16", "24" })
+	public int bits;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	@Param({ "10", "60" })
+	public int seconds;
+
+	@Param({ "WAVE", "AIFF" })
+	public String type;
+
+	/**
+	 * See AudioSampleOptions.setBulkDecoding(); only 16-bit audio is affected.
+	 */
+	@Param({ "true", "false" })
+	public boolean bulk;
+
+	private File file;
+	private AudioSampleOptions options;
+
+	@Setup
+	public void setUp() throws Exception {
+		AudioFileFormat.Type fileType = type.equals("WAVE") ? AudioFileFormat.Type.WAVE : AudioFileFormat.Type.AIFF;
+		this.file = SyntheticAudio.write(fileType, bits, channels, (int) (seconds * SyntheticAudio.SAMPLE_RATE));
+		this.options = new AudioSampleOptions();
+		this.options.setBulkDecoding(bulk);
+	}
+
+	@Benchmark
+	public AudioSample open() throws Exception {
+		return new AudioSample(this.file, this.options);
+	}
+}
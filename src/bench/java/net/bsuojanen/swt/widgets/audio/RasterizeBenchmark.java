@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Headless thumbnails: WaveformRasterizer into ImageData, with no Display,
+ * from a sample that's already open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RasterizeBenchmark {
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	@Param({ "60" })
+	public int seconds;
+
+	@Param({ "512", "2048" })
+	public int width;
+
+	@Param({ "false", "true" })
+	public boolean rms;
+
+	private AudioSample sample;
+	private WaveformRasterizer rasterizer;
+
+	@Setup
+	public void setUp() throws Exception {
+		File file = SyntheticAudio.write(AudioFileFormat.Type.WAVE, 16, channels, (int) (seconds * SyntheticAudio.SAMPLE_RATE));
+		this.sample = new AudioSample(file, new AudioSampleOptions());
+		this.rasterizer = new WaveformRasterizer(this.width, 128);
+		this.rasterizer.setRmsVisible(this.rms);
+	}
+
+	@Benchmark
+	public ImageData render() {
+		return this.rasterizer.render(this.sample);
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing a channel's image as a ChannelCanvas does (rasterized, then made
+ * into an Image), zoomed out (the summary) and zoomed in (raw samples), and
+ * reading the pixels back as ImageData. SWT needs a display for the Image;
+ * on a machine without one, run under xvfb-run.
+ *
+ * SWT wants all of this on one thread, so the state is per-thread and there's
+ * only ever one benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ "60" })
+	public int seconds;
+
+	@Param({ "1024", "4096" })
+	public int width;
+
+	@Param({ "128" })
+	public int height;
+
+	private Display display;
+	private AudioSample sample;
+	private WaveformRasterizer rasterizer;
+	private Image image;
+	private long frames;
+
+	@Setup
+	public void setUp() throws Exception {
+		File file = SyntheticAudio.write(AudioFileFormat.Type.WAVE, 16, 1, (int) (seconds * SyntheticAudio.SAMPLE_RATE));
+		this.sample = new AudioSample(file, new AudioSampleOptions());
+		this.frames = this.sample.getNumberOfFrames();
+		this.display = new Display();
+		this.rasterizer = new WaveformRasterizer(this.width, this.height);
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (this.image != null) {
+			this.image.dispose();
+		}
+		this.display.dispose();
+	}
+
+	private final void draw(long start, long end) {
+		ImageData data = this.rasterizer.render(this.sample, 0, start, end);
+		if (this.image != null) {
+			this.image.dispose();
+		}
+		this.image = new Image(this.display, data);
+	}
+
+	/**
+	 * The whole sample, from the summary.
+	 */
+	@Benchmark
+	public void overview() {
+		this.draw(0, this.frames);
+	}
+
+	/**
+	 * A pixel per frame, from the samples themselves.
+	 */
+	@Benchmark
+	public void zoomedIn() {
+		long start = this.frames / 2;
+		this.draw(start, start + this.width);
+	}
+
+	/**
+	 * The overview, then the pixels copied out (as a thumbnail would be).
+	 */
+	@Benchmark
+	public ImageData overviewToImageData() {
+		this.overview();
+		return this.image.getImageData();
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the summary (min/max and RMS of every bucket, every level) from
+ * samples that are already decoded, chunk by chunk as AudioSample does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SummaryBenchmark {
+
+	// The size of AudioSample's chunks.
+	private static final int CHUNK_FRAMES = 65536;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	@Param({ "10", "60" })
+	public int seconds;
+
+	private int[][] samples;
+	private int frames;
+
+	@Setup
+	public void setUp() {
+		this.frames = (int) (seconds * SyntheticAudio.SAMPLE_RATE);
+		this.samples = SyntheticAudio.generate(16, channels, this.frames);
+	}
+
+	@Benchmark
+	public PeakPyramid summarize() {
+		PeakPyramid pyramid = new PeakPyramid(this.channels, this.frames);
+		for (int frame = 0; frame < this.frames; frame += CHUNK_FRAMES) {
+			int end = Math.min(this.frames, frame + CHUNK_FRAMES);
+			pyramid.update(this.samples, frame, frame, end);
+		}
+		return pyramid;
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Writes the audio the benchmarks work on: a few sine tones plus a little
+ * noise, the same for a given seed, so every run (and every release) measures
+ * the same bytes.
+ */
+final class SyntheticAudio {
+
+	static final float SAMPLE_RATE = 44100f;
+
+	private SyntheticAudio() {
+	}
+
+	/**
+	 * The samples, [channel][frame], scaled to the given size.
+	 *
+	 * @param bits
+	 * @param channels
+	 * @param frames
+	 * @return
+	 */
+	static final int[][] generate(int bits, int channels, int frames) {
+		Random random = new Random(42);
+		double fullScale = (1L << (bits - 1)) - 1;
+		int[][] samples = new int[channels][frames];
+		for (int a = 0; a < channels; a++) {
+			double frequency = 220 * (a + 1);
+			for (int t = 0; t < frames; t++) {
+				double value = 0.6 * Math.sin(2 * Math.PI * frequency * t / SAMPLE_RATE)
+						+ 0.2 * Math.sin(2 * Math.PI * 3.7 * t / SAMPLE_RATE)
+						+ 0.05 * (random.nextDouble() - 0.5);
+				samples[a][t] = (int) (value * fullScale);
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * Writes a temporary file that's deleted on exit. WAVE files are little-endian
+	 * (and memory-mapped by AudioSample); AIFF files are big-endian and decoded
+	 * through Java Sound.
+	 *
+	 * @param type AudioFileFormat.Type.WAVE or AIFF
+	 * @param bits 8, 16 or 24
+	 * @param channels
+	 * @param frames
+	 * @return
+	 * @throws IOException
+	 */
+	static final File write(AudioFileFormat.Type type, int bits, int channels, int frames) throws IOException {
+		boolean bigEndian = (type != AudioFileFormat.Type.WAVE);
+		// 8-bit WAVE is unsigned, everything else signed.
+		boolean unsigned = (bits == 8) && (! bigEndian);
+		int bytesPerSample = bits / 8;
+
+		int[][] samples = generate(bits, channels, frames);
+		byte[] data = new byte[frames * channels * bytesPerSample];
+		int p = 0;
+		for (int t = 0; t < frames; t++) {
+			for (int a = 0; a < channels; a++) {
+				int value = unsigned ? samples[a][t] + 128 : samples[a][t];
+				for (int b = 0; b < bytesPerSample; b++) {
+					int shift = 8 * (bigEndian ? (bytesPerSample - 1 - b) : b);
+					data[p++] = (byte) (value >> shift);
+				}
+			}
+		}
+
+		AudioFormat format = new AudioFormat(
+				unsigned ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED,
+				SAMPLE_RATE, bits, channels, channels * bytesPerSample, SAMPLE_RATE, bigEndian);
+		File file = File.createTempFile("haro-bench-" + bits + "bit-" + channels + "ch-", "." + type.getExtension());
+		file.deleteOnExit();
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, frames), type, file);
+		return file;
+	}
+}
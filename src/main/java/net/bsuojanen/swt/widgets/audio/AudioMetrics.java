@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Where AudioSample and ChannelCanvas report their timings. There's one
+ * listener for the whole VM, and none by default; with none, the only cost
+ * is reading a field per load and per paint (nothing is timed).
+ */
+public final class AudioMetrics {
+
+	private static volatile AudioMetricsListener listener;
+
+	private AudioMetrics() {
+	}
+
+	/**
+	 * @param listener null to stop measuring
+	 */
+	public static final void setListener(final AudioMetricsListener listener) {
+		AudioMetrics.listener = listener;
+	}
+
+	/**
+	 * @return the listener, or null if there isn't one.
+	 */
+	public static final AudioMetricsListener getListener() {
+		return listener;
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Adds up every load and paint, for JMX (ex. jconsole, or a telemetry agent
+ * that polls MBeans). register() publishes it and makes it the listener:
+ * 
+ * <pre>
+ * new AudioMetricsCollector().register();
+ * </pre>
+ * 
+ * It can also be extended, or used as a listener on its own and read directly.
+ */
+public class AudioMetricsCollector extends AudioMetricsListener implements AudioMetricsMXBean {
+
+	public static final String OBJECT_NAME = "net.bsuojanen.swt.widgets.audio:type=AudioMetrics";
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private long samplesLoaded = 0;
+	private long samplesRestored = 0;
+	private long framesLoaded = 0;
+	private long bytesRead = 0;
+	private long totalLoadNanos = 0;
+	private long headerNanos = 0;
+	private long readNanos = 0;
+	private long decodeNanos = 0;
+	private long summaryNanos = 0;
+	private LoadMetrics lastLoad;
+
+	private long paints = 0;
+	private long renders = 0;
+	private long totalPaintNanos = 0;
+	private long totalRenderNanos = 0;
+	private long maximumPaintNanos = 0;
+	private long lastPaintNanos = 0;
+
+	/**
+	 * Registers with the platform MBean server under OBJECT_NAME and starts
+	 * listening (see AudioMetrics.setListener()).
+	 *
+	 * @throws JMException if the name is taken (ex. by another collector).
+	 */
+	public final void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		AudioMetrics.setListener(this);
+	}
+
+	/**
+	 * Stops listening, and unregisters from the platform MBean server.
+	 *
+	 * @throws JMException
+	 */
+	public final void unregister() throws JMException {
+		if (AudioMetrics.getListener() == this) {
+			AudioMetrics.setListener(null);
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+
+	public synchronized void sampleLoaded(final AudioSample sample, final LoadMetrics metrics) {
+		this.samplesLoaded++;
+		if (metrics.isFromPeakCache()) {
+			this.samplesRestored++;
+		}
+		this.framesLoaded += metrics.getFrames();
+		this.bytesRead += metrics.getBytesRead();
+		this.totalLoadNanos += metrics.getTotalNanos();
+		this.headerNanos += metrics.getHeaderNanos();
+		this.readNanos += metrics.getReadNanos();
+		this.decodeNanos += metrics.getDecodeNanos();
+		this.summaryNanos += metrics.getSummaryNanos();
+		this.lastLoad = metrics;
+	}
+
+	public synchronized void channelPainted(final ChannelCanvas canvas, final int width, final int height,
+			final long renderNanos, final long totalNanos) {
+		this.paints++;
+		if (renderNanos > 0) {
+			this.renders++;
+			this.totalRenderNanos += renderNanos;
+		}
+		this.totalPaintNanos += totalNanos;
+		this.maximumPaintNanos = Math.max(this.maximumPaintNanos, totalNanos);
+		this.lastPaintNanos = totalNanos;
+	}
+
+	public synchronized void channelRendered(final ChannelCanvas canvas, final int width, final int height,
+			final long renderNanos) {
+		this.renders++;
+		this.totalRenderNanos += renderNanos;
+	}
+
+	public final synchronized long getSamplesLoaded() {
+		return this.samplesLoaded;
+	}
+
+	public final synchronized long getSamplesRestoredFromPeakCache() {
+		return this.samplesRestored;
+	}
+
+	public final synchronized long getFramesLoaded() {
+		return this.framesLoaded;
+	}
+
+	public final synchronized long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	public final synchronized double getTotalLoadMillis() {
+		return this.totalLoadNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getHeaderMillis() {
+		return this.headerNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getReadMillis() {
+		return this.readNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getDecodeMillis() {
+		return this.decodeNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getSummaryMillis() {
+		return this.summaryNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getLastLoadMillis() {
+		return (this.lastLoad == null) ? 0 : this.lastLoad.getTotalNanos() / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getLastSamplesPerSecond() {
+		return (this.lastLoad == null) ? 0 : this.lastLoad.getSamplesPerSecond();
+	}
+
+	public final synchronized long getLastRetainedBytes() {
+		return (this.lastLoad == null) ? 0 : this.lastLoad.getRetainedBytes();
+	}
+
+	public final synchronized long getLastScratchBytes() {
+		return (this.lastLoad == null) ? 0 : this.lastLoad.getScratchBytes();
+	}
+
+	public final synchronized long getPaints() {
+		return this.paints;
+	}
+
+	public final synchronized long getRenders() {
+		return this.renders;
+	}
+
+	public final synchronized double getTotalPaintMillis() {
+		return this.totalPaintNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getTotalRenderMillis() {
+		return this.totalRenderNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getMaximumPaintMillis() {
+		return this.maximumPaintNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized double getLastPaintMillis() {
+		return this.lastPaintNanos / NANOS_PER_MILLI;
+	}
+
+	public final synchronized void reset() {
+		this.samplesLoaded = 0;
+		this.samplesRestored = 0;
+		this.framesLoaded = 0;
+		this.bytesRead = 0;
+		this.totalLoadNanos = 0;
+		this.headerNanos = 0;
+		this.readNanos = 0;
+		this.decodeNanos = 0;
+		this.summaryNanos = 0;
+		this.lastLoad = null;
+		this.paints = 0;
+		this.renders = 0;
+		this.totalPaintNanos = 0;
+		this.totalRenderNanos = 0;
+		this.maximumPaintNanos = 0;
+		this.lastPaintNanos = 0;
+	}
+}
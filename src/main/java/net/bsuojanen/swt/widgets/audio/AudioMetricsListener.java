@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Hears how long samples take to load and canvases take to paint, to feed
+ * whatever telemetry you have (see AudioMetrics.setListener(), or
+ * AudioMetricsCollector for JMX).
+ *
+ * sampleLoaded() is called on the loading thread, and channelPainted() and
+ * channelRendered() on the UI thread, so keep them quick: record the numbers
+ * and return.
+ */
+public abstract class AudioMetricsListener {
+
+	/**
+	 * A sample has been opened (decoded, or restored from a PeakCache), or the
+	 * raw samples of one restored from a PeakCache have since been decoded.
+	 *
+	 * @param sample
+	 * @param metrics
+	 */
+	public void sampleLoaded(final AudioSample sample, final LoadMetrics metrics) {
+	}
+
+	/**
+	 * A ChannelCanvas has handled a paint event.
+	 *
+	 * @param canvas
+	 * @param width the canvas
+	 * @param height the canvas
+	 * @param renderNanos spent redrawing the canvas's image, or 0 if it was up to date (or is rendered in the background, see channelRendered())
+	 * @param totalNanos the whole paint, including copying the image to the screen
+	 */
+	public void channelPainted(final ChannelCanvas canvas, final int width, final int height,
+			final long renderNanos, final long totalNanos) {
+	}
+
+	/**
+	 * An image rendered in the background has been handed to a ChannelCanvas
+	 * (see ChannelCanvas.setBackgroundRendering()). It's drawn by the next paint.
+	 *
+	 * @param canvas
+	 * @param width the image
+	 * @param height the image
+	 * @param renderNanos spent rasterizing it, on the renderer's thread, and turning it into an Image
+	 */
+	public void channelRendered(final ChannelCanvas canvas, final int width, final int height,
+			final long renderNanos) {
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * The totals an AudioMetricsCollector publishes over JMX. Times are in
+ * milliseconds.
+ */
+public interface AudioMetricsMXBean {
+
+	long getSamplesLoaded();
+
+	long getSamplesRestoredFromPeakCache();
+
+	long getFramesLoaded();
+
+	long getBytesRead();
+
+	double getTotalLoadMillis();
+
+	double getHeaderMillis();
+
+	double getReadMillis();
+
+	double getDecodeMillis();
+
+	double getSummaryMillis();
+
+	double getLastLoadMillis();
+
+	double getLastSamplesPerSecond();
+
+	long getLastRetainedBytes();
+
+	long getLastScratchBytes();
+
+	long getPaints();
+
+	long getRenders();
+
+	double getTotalPaintMillis();
+
+	double getTotalRenderMillis();
+
+	double getMaximumPaintMillis();
+
+	double getLastPaintMillis();
+
+	void reset();
+}
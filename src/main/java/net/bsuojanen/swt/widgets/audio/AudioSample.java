@@ -14,6 +14,23 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -22,56 +39,311 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 
 public class AudioSample {
 	
+	/**
+	 * The number of frames decoded per read. 64K frames is a little over a second
+	 * of CD quality audio, and keeps the read buffer small regardless of file size.
+	 */
+	private static final int CHUNK_FRAMES = 65536;
+	
+	/**
+	 * The number of frames handed to a thread at a time when decoding a memory-mapped
+	 * file in parallel. Small enough to keep 16+ threads busy to the end of the file.
+	 */
+	private static final int TASK_FRAMES = 16 * CHUNK_FRAMES;
+	
+	private final File file;
+	private final AudioSampleOptions options;
+	private volatile AudioSampleLoadListener listener;
+	private final AtomicLong framesProcessed = new AtomicLong();
+	private volatile boolean opening = false;
 	private AudioInputStream audioInputStream;
 	private AudioFormat format;
+	private volatile long frameLength;
 	
-	private int[][] samplesContainer;
+	/**
+	 * The number of frames, from the start of the file, that have been decoded
+	 * and summarized. Chunks decoded in parallel may finish out of order; those
+	 * past the first gap wait in completedChunks until the gap is filled.
+	 */
+	private volatile int decodedFrames = 0;
+	
+	/**
+	 * Set once the whole file has been decoded (or its summary restored). Not
+	 * inferred from decodedFrames, which catches up with frameLength after
+	 * every chunk while a stream of unknown length is read.
+	 */
+	private volatile boolean complete = false;
+	private final TreeMap<Integer, Integer> completedChunks = new TreeMap<Integer, Integer>();
+	
+	private volatile SampleBuffer[] samplesContainer;
+	
+	/**
+	 * Held while the raw samples of a sample restored from a PeakCache are
+	 * read (see ensureSamplesAvailable()). Not the sample's own monitor, so
+	 * nothing else waits on it.
+	 */
+	private final Object samplesLock = new Object();
+	
+	/**
+	 * Answers getRangeStatistics(); extended as each chunk joins the decoded prefix.
+	 */
+	private volatile RangeIndex rangeIndex;
+	
+	/**
+	 * Silences and onsets, if the options asked for them; extended alongside rangeIndex.
+	 */
+	private volatile MarkerIndex markerIndex;
+	
+	/**
+	 * The timings of the load under way, or null when there's no
+	 * AudioMetricsListener (in which case nothing is timed).
+	 */
+	private LoadMetrics metrics;
+	private WaveFile waveFile;
+	private PeakPyramid peakPyramid;
+	private boolean shift8BitSamples = false;
 	
 	private int sampleMax = 0;
 	private int sampleMin = 0;
-	private double biggestSample;
+	private volatile double biggestSample;
+	
+	/**
+	 * Floating point samples are multiplied by this and stored as ints, so full
+	 * scale (1.0) becomes Integer.MAX_VALUE.
+	 */
+	static final double FLOAT_SCALE = 2147483648.0;
 	
 	public AudioSample(final File file) throws Exception {
+		this(file, new AudioSampleOptions());
+	}
+	
+	/**
+	 * Opens the file, going through the given PeakCache. If the cache has an
+	 * up-to-date summary of the file, the audio isn't decoded at all until the
+	 * raw samples are asked for (see getAudio()). Otherwise the file is decoded
+	 * and its summary is added to the cache.
+	 * 
+	 * @param file
+	 * @param peakCache may be null
+	 * @throws Exception
+	 */
+	public AudioSample(final File file, final PeakCache peakCache) throws Exception {
+		this(file, withPeakCache(peakCache));
+	}
+	
+	/**
+	 * Opens the file with the given options (peak cache, parallel decoding).
+	 * 
+	 * @param file
+	 * @param options
+	 * @throws Exception
+	 * @see AudioSampleOptions
+	 */
+	public AudioSample(final File file, final AudioSampleOptions options) throws Exception {
+		this(file, options, null);
+		this.open();
+	}
+	
+	/**
+	 * Used by AudioSampleLoader, which then calls open(). The listener hears about
+	 * progress as chunks are decoded, and interrupting the thread cancels the decode.
+	 */
+	AudioSample(final File file, final AudioSampleOptions options, final AudioSampleLoadListener listener) {
+		this.file = file;
+		this.options = options;
+		this.listener = listener;
+	}
+	
+	/**
+	 * Reads the summary from the cache, or decodes the file. As soon as the header
+	 * has been read the listener gets loadStarted(), after which the sample can be
+	 * drawn while it's decoding (see getDecodedFrames()).
+	 * 
+	 * @throws Exception
+	 */
+	final void open() throws Exception {
+		this.opening = true;
+		AudioMetricsListener metricsListener = AudioMetrics.getListener();
+		this.metrics = (metricsListener == null) ? null : new LoadMetrics(this.file);
 		try {
+			PeakCache peakCache = this.options.getPeakCache();
+			
+			if ( (peakCache != null) && peakCache.load(this.file, this) ) {
+				// Mapping costs next to nothing; anything else is read when it's needed (see ensureSamplesAvailable()).
+				this.mapSamples();
+				this.notifyStarted();
+				this.reportMetrics(metricsListener, true);
+				return;
+			}
+			
+			this.decode();
+			
+			if (peakCache != null) {
+				peakCache.store(this.file, this);
+			}
+			this.reportMetrics(metricsListener, false);
+		} finally {
+			this.metrics = null;
+			this.opening = false;
+			// A sample can outlive its load (ex. in a SampleCache); don't hold on to whoever was listening.
+			this.listener = null;
+		}
+	}
+	
+	private final void reportMetrics(AudioMetricsListener metricsListener, boolean fromPeakCache) {
+		if (this.metrics != null) {
+			this.metrics.finish(this, fromPeakCache);
+			metricsListener.sampleLoaded(this, this.metrics);
+		}
+	}
+	
+	private static final AudioSampleOptions withPeakCache(final PeakCache peakCache) {
+		AudioSampleOptions options = new AudioSampleOptions();
+		options.setPeakCache(peakCache);
+		return options;
+	}
+	
+	private final void decode() throws IOException, UnsupportedAudioFileException {
+		try {
+			
+			// Plain PCM WAVE files are mapped and read directly, bypassing Java Sound.
+			this.waveFile = this.openWaveFile();
+			if (this.waveFile != null) {
+				this.format = this.waveFile.getFormat();
+				this.validateFormat();
+				if (this.metrics != null) {
+					this.metrics.headerRead();
+				}
+				this.createMappedSummary();
+				this.finishMarkers();
+				this.complete = true;
+				return;
+			}
 
 			this.audioInputStream = AudioSystem
 					.getAudioInputStream(new BufferedInputStream(
-							new FileInputStream(file)));
+							new FileInputStream(this.file)));
 			this.format = this.audioInputStream.getFormat();
+			this.validateFormat();
+			if (this.metrics != null) {
+				this.metrics.headerRead();
+			}
+			this.createSampleArrayCollection();
+			this.finishMarkers();
+			this.complete = true;
 
-			// Support only mono and stereo audio files.
-			if (this.getNumberOfChannels() > 2) {
+		} catch (UnsupportedAudioFileException e) {
+			throw (e);
+		} catch (IOException e) {
+			throw (e);
+		}
+	}
+	
+	private final void finishMarkers() {
+		if (this.markerIndex != null) {
+			this.markerIndex.finish((int) this.frameLength);
+		}
+	}
+	
+	private final void validateFormat() throws UnsupportedAudioFileException {
+			if (this.getNumberOfChannels() < 1) {
 				throw new UnsupportedAudioFileException(
-						"Only mono or stereo audio is currently supported.");
+						"The number of channels isn't known.");
 			}
 
-			// We support 8-bit (PCM), 16-bit, and 24-bit audio.
-			if (this.getBitsPerSample() > 24) {
+			int bits = this.getBitsPerSample();
+			
+			// A-law and u-law are always 8 bits.
+			if ( this.isCompanded() && (bits != 8) ) {
 				throw new UnsupportedAudioFileException(
-						"Audio recorded higher than 24 bits per sample is not currently supported.");
+						bits + "-bit " + this.getEncoding() + " audio is not supported.");
 			}
 			
-			if(this.getBitsPerSample() == 8) {
-				if(this.getEncoding().equals("ALAW")) {
-					throw new UnsupportedAudioFileException(
-							"A-law enconding is not currently supported.");
-				}
-				
-				if(this.getEncoding().equals("ULAW")) {
-					throw new UnsupportedAudioFileException(
-							"U-law enconding is not currently supported.");
-				}
+			// 32-bit (float) and 64-bit (double) floating point audio.
+			if ( this.isFloat() && (bits != 32) && (bits != 64) ) {
+				throw new UnsupportedAudioFileException(
+						bits + "-bit floating point audio is not supported.");
 			}
-
-			this.createSampleArrayCollection();
-
-		} catch (UnsupportedAudioFileException e) {
-			throw (e);
+			
+			// We support 8-bit, 16-bit, 24-bit and 32-bit PCM audio.
+			if ( this.isLinearPcm() && (bits != 8) && (bits != 16) && (bits != 24) && (bits != 32) ) {
+				throw new UnsupportedAudioFileException(
+						bits + "-bit PCM audio is not supported.");
+			}
+			
+			if ( (! this.isCompanded()) && (! this.isFloat()) && (! this.isLinearPcm()) ) {
+				throw new UnsupportedAudioFileException(
+						this.getEncoding() + " encoding is not supported.");
+			}
+	}
+	
+	private final boolean isCompanded() {
+		String encoding = this.getEncoding();
+		return encoding.equals("ALAW") || encoding.equals("ULAW");
+	}
+	
+	private final boolean isFloat() {
+		return this.getEncoding().equals(WaveFile.PCM_FLOAT.toString());
+	}
+	
+	private final boolean isLinearPcm() {
+		String encoding = this.getEncoding();
+		return encoding.equals("PCM_SIGNED") || encoding.equals("PCM_UNSIGNED");
+	}
+	
+	/**
+	 * The size of the decoded samples, which decides how they're stored (see
+	 * SampleBuffer.allocate()). A-law and u-law expand to 16 bits, and floats
+	 * are scaled to 32-bit integers (see FLOAT_SCALE).
+	 * 
+	 * @return
+	 */
+	private final int getDecodedBitsPerSample() {
+		if (this.isCompanded()) {
+			return 16;
+		}
+		if (this.isFloat()) {
+			return 32;
+		}
+		return this.getBitsPerSample();
+	}
+	
+	/**
+	 * @return the mapped file, or null if it isn't a plain PCM WAVE file (or it can't be mapped).
+	 */
+	private final WaveFile openWaveFile() {
+		try {
+			return WaveFile.open(this.file);
 		} catch (IOException e) {
-			throw (e);
+			// Mapping can fail (ex. out of address space on a 32-bit VM). Java Sound will do.
+			return null;
 		}
 	}
 	
+	public final File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * The number of frames, from the start, that have been decoded and can be
+	 * drawn. This is less than getNumberOfFrames() while the sample is still
+	 * being loaded (see AudioSampleLoadListener.loadStarted()).
+	 * 
+	 * @return
+	 */
+	public final long getDecodedFrames() {
+		return this.decodedFrames;
+	}
+	
+	/**
+	 * Whether every frame has been decoded.
+	 * 
+	 * @return
+	 */
+	public final boolean isComplete() {
+		return this.complete;
+	}
+	
 	public final float getDuration() {
 		return ( (float) this.getNumberOfFrames() / this.getFramerate() );
 	}
@@ -82,7 +354,7 @@ public class AudioSample {
 	 * @return
 	 */
 	public final long getNumberOfFrames() {
-		return this.audioInputStream.getFrameLength();
+		return this.frameLength;
 	}
 	
 	/**
@@ -120,7 +392,7 @@ public class AudioSample {
 	}
 
 	/**
-	 * Mono (1) or stereo (2).
+	 * Mono (1), stereo (2), or any other number of channels (ex. 6 for 5.1).
 	 * 
 	 * @return
 	 */
@@ -129,9 +401,10 @@ public class AudioSample {
 	}
 	
 	/**
-	 * The number of bits representing a "sample".
+	 * The number of bits representing a "sample", as stored in the file.
 	 * 
-	 * Currently, only 16 bit audio is well supported but 8 and 24 should be supported.
+	 * 8, 16, 24 and 32-bit PCM, 8-bit A-law and u-law, and 32 and 64-bit
+	 * floating point audio are supported.
 	 * 
 	 * @return
 	 */
@@ -166,47 +439,748 @@ public class AudioSample {
 	 * Return the samples for a given channel. Because some audio is mono it is
 	 * safe to always pass 0 (zero) as the argument.
 	 * 
+	 * The buffer holds the samples at their natural size (or, for a memory-mapped
+	 * file, reads them from the mapping), so this doesn't copy anything.
+	 * 
 	 * @param channel
 	 * @return
 	 */
-	public final int[] getAudio(int channel) {
+	public final SampleBuffer getAudio(int channel) {
+		this.ensureSamplesAvailable();
 		return this.samplesContainer[channel];
 	}
+	
+	/**
+	 * Return a copy of the samples for a given channel, widened to an int[].
+	 * This costs four bytes per sample; prefer getAudio() where you can.
+	 * 
+	 * @param channel
+	 * @return
+	 */
+	public final int[] getAudioArray(int channel) {
+		return this.getAudio(channel).toArray();
+	}
+	
+	/**
+	 * Returns a single sample.
+	 * 
+	 * @param channel
+	 * @param frame
+	 * @return
+	 */
+	public final int getSample(int channel, int frame) {
+		return this.getAudio(channel).get(frame);
+	}
+	
+	/**
+	 * Whether the raw samples can be read without decoding the file, i.e. they're
+	 * in memory or memory-mapped. When the sample was opened from a PeakCache
+	 * they aren't until getAudio() is first called (AudioSampleLoader and
+	 * SampleCache read them before handing the sample over).
+	 * 
+	 * @return
+	 */
+	public final boolean isDecoded() {
+		return this.samplesContainer != null;
+	}
+	
+	/**
+	 * Whether the samples are read from a memory-mapped WAVE file rather than
+	 * decoded onto the heap.
+	 * 
+	 * @return
+	 */
+	public final boolean isMemoryMapped() {
+		return this.waveFile != null;
+	}
+	
+	/**
+	 * The min/max summary of every channel, built while the audio was decoded.
+	 * Drawing an overview from this is much cheaper than walking the samples.
+	 * 
+	 * @return
+	 */
+	public final PeakPyramid getPeakPyramid() {
+		return this.peakPyramid;
+	}
 
-	private final void createSampleArrayCollection() {
+	/**
+	 * Roughly how much heap the sample holds: its samples (nothing, if they're
+	 * memory-mapped or not decoded yet) and its summary.
+	 * 
+	 * @return
+	 */
+	public final long getSizeInBytes() {
+		long size = (this.peakPyramid == null) ? 0 : this.peakPyramid.getSizeInBytes();
+		SampleBuffer[] buffers = this.samplesContainer;
+		if (buffers != null) {
+			for (SampleBuffer buffer : buffers) {
+				size += buffer.getSizeInBytes();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * The min, max, peak and RMS of a channel over the frames [from, to) (ex. a
+	 * selection). However long the range, this reads a few hundred values at
+	 * most (see RangeIndex), so it's quick enough to call while dragging.
+	 * While the sample is loading, the range is cut off at getDecodedFrames().
+	 * 
+	 * The ends of the range are read from the raw samples, so for a sample
+	 * opened from a PeakCache this decodes it the first time (see getAudio()).
+	 * 
+	 * @param channel
+	 * @param from
+	 * @param to the frame after the last one
+	 * @return
+	 */
+	public final RangeStatistics getRangeStatistics(int channel, long from, long to) {
+		RangeIndex index = this.rangeIndex;
+		int start = (int) Math.max(0, from);
+		int end = (int) Math.min(to, this.decodedFrames);
+		if ( (index == null) || (end <= start) ) {
+			return new RangeStatistics(0, 0, 0, 0);
+		}
+		return index.query(channel, start, end);
+	}
+	
+	/**
+	 * The silences and onsets of the sample, for jumping between them and
+	 * drawing them (see ChannelCanvas.setMarkersVisible()). They're found
+	 * while the sample is decoded, so they're only there if the options it was
+	 * opened with asked for them (see AudioSampleOptions.setMarkerOptions()).
+	 * 
+	 * @return the index, or null.
+	 */
+	public final MarkerIndex getMarkerIndex() {
+		return this.markerIndex;
+	}
+	
+	final int getSampleMin() {
+		return this.sampleMin;
+	}
+	
+	final int getSampleMax() {
+		return this.sampleMax;
+	}
+	
+	/**
+	 * Called by PeakCache when the summary of the file is restored rather than decoded.
+	 */
+	final void restoreSummary(AudioFormat format, long frameLength, int sampleMin, int sampleMax,
+			double biggestSample, PeakPyramid peakPyramid) {
+		this.format = format;
+		this.frameLength = frameLength;
+		this.sampleMin = sampleMin;
+		this.sampleMax = sampleMax;
+		this.biggestSample = biggestSample;
+		this.peakPyramid = peakPyramid;
+		this.rangeIndex = new RangeIndex(this, peakPyramid);
+		this.rangeIndex.extend((int) frameLength);
+		this.markerIndex = this.createMarkerIndex();
+		this.finishMarkers();
+		this.decodedFrames = (int) frameLength;
+		this.complete = true;
+	}
+	
+	/**
+	 * Makes the raw samples readable when the sample was opened from a PeakCache.
+	 * A WAVE file only needs mapping; anything else is read in full, into the
+	 * SampleBuffers alone. The summary restored from the cache (and the
+	 * indexes built from it) are left as they are, so the sample can be drawn
+	 * from it throughout.
+	 * 
+	 * AudioSampleLoader and SampleCache call this on their loading thread, so
+	 * a sample they hand over is ready; otherwise the first getAudio() does,
+	 * on whatever thread it's called from.
+	 */
+	final void ensureSamplesAvailable() {
+		if (this.samplesContainer != null) {
+			return;
+		}
+		synchronized (this.samplesLock) {
+			if ( (this.samplesContainer != null) || this.mapSamples() ) {
+				return;
+			}
+			try {
+				this.samplesContainer = this.readSamples();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to decode " + this.file.getAbsolutePath(), e);
+			} catch (UnsupportedAudioFileException e) {
+				throw new IllegalStateException("Unable to decode " + this.file.getAbsolutePath(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Maps the samples of a plain PCM WAVE file whose summary is already here.
+	 * 
+	 * @return false if it isn't one (or it can't be mapped).
+	 */
+	private final boolean mapSamples() {
+		synchronized (this.samplesLock) {
+			if (this.samplesContainer != null) {
+				return true;
+			}
+			WaveFile mapped = this.openWaveFile();
+			if (mapped == null) {
+				return false;
+			}
+			this.waveFile = mapped;
+			this.shift8BitSamples = true;
+			this.samplesContainer = this.createMappedBuffers();
+			return true;
+		}
+	}
+	
+	/**
+	 * Decodes the file into new SampleBuffers, without summarizing it or
+	 * touching anything a reader of the summary could see.
+	 * 
+	 * @return the buffers, getNumberOfFrames() long.
+	 * @throws IOException
+	 * @throws UnsupportedAudioFileException
+	 */
+	private final SampleBuffer[] readSamples() throws IOException, UnsupportedAudioFileException {
+		AudioMetricsListener metricsListener = AudioMetrics.getListener();
+		LoadMetrics metrics = (metricsListener == null) ? null : new LoadMetrics(this.file);
+		int length = (int) this.frameLength;
+		SampleBuffer[] buffers = new SampleBuffer[this.getNumberOfChannels()];
+		for (int a = 0; a < buffers.length; a++) {
+			buffers[a] = SampleBuffer.allocate(this.getDecodedBitsPerSample(), length);
+		}
+		
+		this.audioInputStream = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+		try {
+			if (metrics != null) {
+				metrics.headerRead();
+			}
+			Chunk chunk = new Chunk();
+			int frame = 0;
+			while (frame < length) {
+				this.checkCanceled();
+				long start = (metrics == null) ? 0 : System.nanoTime();
+				int bytesInChunk = this.readChunk(chunk.bytes);
+				if (bytesInChunk == 0) {
+					break;
+				}
+				long read = (metrics == null) ? 0 : System.nanoTime();
+				int frames = Math.min(bytesInChunk / this.getFrameSize(), length - frame);
+				if ( (frame == 0) && this.isLinearPcm() && (this.getBitsPerSample() == 8) ) {
+					this.shift8BitSamples = !this.is8BitUnsigned(chunk.bytes, bytesInChunk);
+				}
+				this.decodeChunk(chunk, frames * this.getFrameSize());
+				for (int a = 0; a < buffers.length; a++) {
+					buffers[a].put(frame, chunk.samples[a], 0, frames);
+				}
+				if (metrics != null) {
+					metrics.addRead(bytesInChunk, read - start);
+					metrics.addDecode(System.nanoTime() - read);
+				}
+				frame += frames;
+			}
+		} finally {
+			this.audioInputStream.close();
+		}
+		
+		if (metrics != null) {
+			metrics.finish(this, false);
+			metricsListener.sampleLoaded(this, metrics);
+		}
+		return buffers;
+	}
+	
+	/**
+	 * Summarizes a memory-mapped WAVE file. The data is walked chunk by chunk
+	 * through a small scratch buffer just to build the PeakPyramid; the samples
+	 * themselves stay in the file and are read on demand. With parallelism the
+	 * file is split into TASK_FRAMES ranges that are walked concurrently.
+	 * 
+	 * @throws IOException
+	 * @throws UnsupportedAudioFileException
+	 */
+	private final void createMappedSummary() throws IOException, UnsupportedAudioFileException {
+		long frames = this.waveFile.getNumberOfFrames();
+		if (frames > Integer.MAX_VALUE) {
+			throw new UnsupportedAudioFileException(
+					"Audio longer than " + Integer.MAX_VALUE + " frames is not currently supported.");
+		}
+		
+		this.samplesContainer = this.createMappedBuffers();
+		this.peakPyramid = new PeakPyramid(this.getNumberOfChannels(), (int) frames);
+		this.resetProgress(frames);
+		
+		// 8-bit WAVE is always unsigned.
+		this.shift8BitSamples = true;
+		
+		this.notifyStarted();
+		
+		final int length = (int) frames;
+		final int parallelism = Math.min(this.options.getParallelism(), (length + TASK_FRAMES - 1) / TASK_FRAMES);
+		
+		if (parallelism <= 1) {
+			this.decodeMappedRange(createChunks(1).poll(), 0, length);
+		} else {
+			final BlockingQueue<Chunk> chunks = createChunks(parallelism);
+			ExecutorService executor = createExecutor(parallelism);
+			try {
+				List<Future<?>> tasks = new ArrayList<Future<?>>();
+				for (int frame = 0; frame < length; frame += TASK_FRAMES) {
+					final int from = frame;
+					final int to = (int) Math.min((long) frame + TASK_FRAMES, length);
+					tasks.add(executor.submit(new Runnable() {
+						public void run() {
+							Chunk chunk = chunks.poll();
+							try {
+								decodeMappedRange(chunk, from, to);
+							} finally {
+								chunks.add(chunk);
+							}
+						}
+					}));
+				}
+				awaitAll(tasks);
+			} finally {
+				// Interrupts the pool threads if we're bailing out (ex. canceled) part way.
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Walks frames [from, to) of the mapped file through the given chunk.
+	 */
+	private final void decodeMappedRange(Chunk chunk, int from, int to) {
+		LoadMetrics metrics = this.metrics;
+		for (int frame = from; frame < to; frame += CHUNK_FRAMES) {
+			int framesInChunk = Math.min(CHUNK_FRAMES, to - frame);
+			long start = (metrics == null) ? 0 : System.nanoTime();
+			this.waveFile.read(frame, chunk.bytes, framesInChunk);
+			if (metrics != null) {
+				// Reading the mapping is where the pages are faulted in from disk.
+				metrics.addRead((long) framesInChunk * this.getFrameSize(), System.nanoTime() - start);
+			}
+			chunk.process(frame, framesInChunk);
+		}
+	}
+	
+	private final SampleBuffer[] createMappedBuffers() {
+		SampleBuffer[] buffers = new SampleBuffer[this.getNumberOfChannels()];
+		for (int a = 0; a < buffers.length; a++) {
+			buffers[a] = new MappedSampleBuffer(this.waveFile, a, (int) this.waveFile.getNumberOfFrames());
+		}
+		return buffers;
+	}
+	
+	/**
+	 * The working memory for one chunk: the raw bytes, the decoded samples, and
+	 * the min/max of everything this chunk has decoded. Each decoding thread
+	 * works with its own, so nothing in the inner loops is shared.
+	 */
+	private final class Chunk {
+		
+		private final byte[] bytes;
+		private final ByteBuffer buffer;
+		private final int[][] samples;
+		private int min = 0;
+		private int max = 0;
+		
+		private Chunk() {
+			this(new byte[CHUNK_FRAMES * getFrameSize()], new int[getNumberOfChannels()][CHUNK_FRAMES]);
+		}
+		
+		private Chunk(byte[] bytes, int[][] samples) {
+			this.bytes = bytes;
+			this.buffer = ByteBuffer.wrap(bytes).order(isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+			this.samples = samples;
+		}
+		
+		/**
+		 * Decodes the frames in bytes, stores them (unless they're memory-mapped)
+		 * and summarizes them while they're still warm in the cache.
+		 * 
+		 * @param firstFrame the index in the file of the first frame in bytes
+		 * @param frames the number of frames in bytes
+		 */
+		private final void process(int firstFrame, int frames) {
+			checkCanceled();
+			LoadMetrics metrics = AudioSample.this.metrics;
+			long start = (metrics == null) ? 0 : System.nanoTime();
+			decodeChunk(this, frames * getFrameSize());
+			
+			if (waveFile == null) {
+				for (int a = 0; a < this.samples.length; a++) {
+					samplesContainer[a].put(firstFrame, this.samples[a], 0, frames);
+				}
+			}
+			long decoded = (metrics == null) ? 0 : System.nanoTime();
+			peakPyramid.update(this.samples, 0, firstFrame, firstFrame + frames);
+			if (metrics != null) {
+				metrics.addDecode(decoded - start);
+				metrics.addSummary(System.nanoTime() - decoded);
+			}
+			
+			chunkDecoded(this, firstFrame, frames);
+		}
+	}
+	
+	/**
+	 * Publishes a decoded chunk: folds its min/max into the sample's, advances
+	 * decodedFrames if the chunk extends the decoded prefix, and reports progress.
+	 * 
+	 * @param chunk
+	 * @param firstFrame
+	 * @param frames
+	 */
+	private final void chunkDecoded(Chunk chunk, int firstFrame, int frames) {
+		synchronized (this.completedChunks) {
+			this.sampleMin = Math.min(this.sampleMin, chunk.min);
+			this.sampleMax = Math.max(this.sampleMax, chunk.max);
+			this.findBiggestSample();
+			
+			this.completedChunks.put(firstFrame, firstFrame + frames);
+			int decoded = this.decodedFrames;
+			while (this.completedChunks.containsKey(decoded)) {
+				decoded = this.completedChunks.remove(decoded);
+			}
+			if (decoded > this.frameLength) {
+				// Streams that didn't know their length.
+				this.frameLength = decoded;
+			}
+			this.rangeIndex.extend(decoded);
+			if (this.markerIndex != null) {
+				this.markerIndex.extend(decoded);
+			}
+			// Written last; readers of decodedFrames see everything decoded before it.
+			this.decodedFrames = decoded;
+		}
+		this.reportProgress(frames);
+	}
+	
+	private final void resetProgress(long expectedFrames) {
+		synchronized (this.completedChunks) {
+			this.completedChunks.clear();
+			this.framesProcessed.set(0);
+			this.frameLength = Math.max(0, expectedFrames);
+			this.decodedFrames = 0;
+			this.complete = false;
+			this.rangeIndex = new RangeIndex(this, this.peakPyramid);
+			this.markerIndex = this.createMarkerIndex();
+		}
+	}
+	
+	private final MarkerIndex createMarkerIndex() {
+		MarkerOptions markerOptions = this.options.getMarkerOptions();
+		return (markerOptions == null) ? null : new MarkerIndex(this, this.peakPyramid, markerOptions);
+	}
+	
+	private final void notifyStarted() {
+		if ( this.opening && (this.listener != null) ) {
+			this.listener.loadStarted(this);
+		}
+	}
+	
+	/**
+	 * Decoding is canceled by interrupting the thread (ex. Future.cancel(true)
+	 * on an AudioSampleLoader load, or shutting down the decoding pool).
+	 */
+	private final void checkCanceled() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Decoding " + this.file.getName() + " was canceled.");
+		}
+	}
+	
+	private final void reportProgress(int frames) {
+		long done = this.framesProcessed.addAndGet(frames);
+		if ( this.opening && (this.listener != null) ) {
+			this.listener.loadProgress(this.file, done, this.getExpectedFrames());
+		}
+	}
+	
+	/**
+	 * The length of the file as declared by its header, or -1 if it doesn't say.
+	 */
+	private final long getExpectedFrames() {
+		if (this.waveFile != null) {
+			return this.waveFile.getNumberOfFrames();
+		}
+		long frames = this.audioInputStream.getFrameLength();
+		return (frames == AudioSystem.NOT_SPECIFIED) ? -1 : frames;
+	}
+	
+	/**
+	 * A sample with no file, only a format, used to decode raw frames with the
+	 * same decoders as a file (see LiveSample).
+	 * 
+	 * @param format
+	 * @return
+	 * @throws UnsupportedAudioFileException if the format can't be decoded.
+	 */
+	static final AudioSample createDecoder(final AudioFormat format) throws UnsupportedAudioFileException {
+		AudioSample decoder = new AudioSample(null, new AudioSampleOptions(), null);
+		decoder.format = format;
+		decoder.validateFormat();
+		// There's no first chunk to guess from; trust the format.
+		decoder.shift8BitSamples = format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED);
+		return decoder;
+	}
+	
+	/**
+	 * Decodes interleaved frames into per-channel samples, for a sample made by
+	 * createDecoder(). Nothing is stored or summarized.
+	 * 
+	 * @param bytes
+	 * @param frames
+	 * @param samples [channel][frame]
+	 */
+	final void decodeFrames(byte[] bytes, int frames, int[][] samples) {
+		this.decodeChunk(new Chunk(bytes, samples), frames * this.getFrameSize());
+	}
+	
+	/**
+	 * The largest value a decoded sample can have (ex. 32767 for 16-bit and
+	 * A-law/u-law audio).
+	 * 
+	 * @return
+	 */
+	final int getFullScale() {
+		return (int) ((1L << (this.getDecodedBitsPerSample() - 1)) - 1);
+	}
+	
+	/**
+	 * Decodes a chunk of interleaved bytes into per-channel samples.
+	 * 
+	 * @param chunk
+	 * @param length the number of valid bytes in the chunk
+	 */
+	private final void decodeChunk(Chunk chunk, int length) {
+		String encoding = this.getEncoding();
+		if(encoding.equals("ALAW")) {
+			this.getCompandedSampleArray(chunk.bytes, length, chunk, G711.ALAW);
+		} else if(encoding.equals("ULAW")) {
+			this.getCompandedSampleArray(chunk.bytes, length, chunk, G711.ULAW);
+		} else if(this.isFloat()) {
+			this.getFloatSampleArray(chunk.buffer, length, chunk);
+		} else if(this.getBitsPerSample() == 8) {
+			this.ensure8bitUnsigned(chunk.bytes, length);
+			this.get8BitSampleArray(chunk.bytes, length, chunk);
+		} else if(this.getBitsPerSample() == 24) {
+			this.get24BitSampleArray(chunk.bytes, length, chunk);
+		} else if(this.getBitsPerSample() == 32) {
+			this.get32BitSampleArray(chunk.buffer, length, chunk);
+		} else if (this.options.isBulkDecoding()) {
+			this.get16BitChannels(chunk.buffer, length, chunk);
+		} else {
+			this.get16BitSampleArray(chunk.bytes, length, chunk);
+		}
+	}
+	
+	private final void findBiggestSample() {
+		// Find biggest sample. Useful for interpolating the yScaleFactor (ex. drawing a waveform).
+		if (this.sampleMax > this.sampleMin) {
+			this.biggestSample = this.sampleMax;
+		} else {
+			this.biggestSample = Math.abs(((double) this.sampleMin));
+		}
+	}
+	
+	/**
+	 * Decodes the audio stream chunk by chunk. Only a chunk of raw bytes
+	 * (CHUNK_FRAMES frames) per thread is ever held in memory; each chunk is
+	 * decoded into a chunk-sized scratch array, then stored in the per-channel
+	 * SampleBuffers at their natural size. The min/max are tracked as we go.
+	 * 
+	 * With parallelism (and a stream that knows its length) this thread only
+	 * reads: each chunk is handed to a pool thread to decode, and reading
+	 * continues into the next free chunk.
+	 * 
+	 * @throws IOException
+	 * @throws UnsupportedAudioFileException
+	 */
+	private final void createSampleArrayCollection() throws IOException, UnsupportedAudioFileException {
+		ExecutorService executor = null;
 		try {
-			this.audioInputStream.mark(Integer.MAX_VALUE);
-			this.audioInputStream.reset();
+			final int channels = this.getNumberOfChannels();
+			
+			long frames = this.audioInputStream.getFrameLength();
+			if (frames > Integer.MAX_VALUE) {
+				throw new UnsupportedAudioFileException(
+						"Audio longer than " + Integer.MAX_VALUE + " frames is not currently supported.");
+			}
 			
-			int bufferSize = ( (int) this.getNumberOfFrames() ) * this.getFrameSize();
+			// Some streams don't know their length up front; start small and grow as needed.
+			boolean lengthKnown = (frames != AudioSystem.NOT_SPECIFIED);
+			int capacity = lengthKnown ? (int) frames : CHUNK_FRAMES;
+			this.samplesContainer = new SampleBuffer[channels];
+			for (int a = 0; a < channels; a++) {
+				this.samplesContainer[a] = SampleBuffer.allocate(this.getDecodedBitsPerSample(), capacity);
+			}
+			this.peakPyramid = new PeakPyramid(channels, capacity);
+			this.resetProgress(lengthKnown ? frames : 0);
+			this.notifyStarted();
 			
-			byte[] bytes = new byte[bufferSize];
+			// Growing the buffers while other threads write to them isn't safe, so only decode in parallel when we know the length.
+			int parallelism = lengthKnown ? this.options.getParallelism() : 1;
 			
-			try {
-				this.audioInputStream.read(bytes);
-			} catch (Exception e) {
-				e.printStackTrace();
+			// One chunk more than there are threads, so there's always one to read into.
+			BlockingQueue<Chunk> chunks = createChunks((parallelism > 1) ? parallelism + 1 : 1);
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			if (parallelism > 1) {
+				executor = createExecutor(parallelism);
 			}
 			
-			if(this.getBitsPerSample() == 8) {
-				// Ensure the bytes are unsigned...
-				this.ensure8bitUnsigned(bytes);
-				this.samplesContainer = this.get8BitSampleArray(bytes);
-			} else if(this.getBitsPerSample() == 24) {
-				this.samplesContainer = this.get24BitSampleArray(bytes);
-			} else {
-				this.samplesContainer = this.get16BitSampleArray(bytes);
+			int framesDecoded = 0;
+			boolean firstChunk = true;
+			
+			while (true) {
+				this.checkCanceled();
+				final Chunk chunk = take(chunks);
+				long readStart = (this.metrics == null) ? 0 : System.nanoTime();
+				int bytesInChunk = this.readChunk(chunk.bytes);
+				if (this.metrics != null) {
+					this.metrics.addRead(bytesInChunk, System.nanoTime() - readStart);
+				}
+				if (bytesInChunk == 0) {
+					chunks.add(chunk);
+					break;
+				}
+				final int firstFrame = framesDecoded;
+				final int framesInChunk = bytesInChunk / this.getFrameSize();
+				
+				if (framesDecoded + framesInChunk > this.samplesContainer[0].length()) {
+					// The header understated the length. Let in-flight chunks finish before resizing.
+					awaitAll(tasks);
+					this.growSampleArrays(framesDecoded + framesInChunk);
+				}
+				
+				// Signedness of 8-bit audio is decided once, from the first chunk, and applied to the rest.
+				if ( firstChunk && this.isLinearPcm() && (this.getBitsPerSample() == 8) ) {
+					this.shift8BitSamples = !this.is8BitUnsigned(chunk.bytes, bytesInChunk);
+				}
+				
+				if (executor == null) {
+					chunk.process(firstFrame, framesInChunk);
+					chunks.add(chunk);
+				} else {
+					final BlockingQueue<Chunk> pool = chunks;
+					tasks.add(executor.submit(new Runnable() {
+						public void run() {
+							try {
+								chunk.process(firstFrame, framesInChunk);
+							} finally {
+								pool.add(chunk);
+							}
+						}
+					}));
+				}
+				
+				framesDecoded += framesInChunk;
+				firstChunk = false;
 			}
+			awaitAll(tasks);
 			
-			// Find biggest sample. Useful for interpolating the yScaleFactor (ex. drawing a waveform).
-			if (this.sampleMax > this.sampleMin) {
-				this.biggestSample = this.sampleMax;
-			} else {
-				this.biggestSample = Math.abs(((double) this.sampleMin));
+			// Trim to what we actually got (the header may overstate the length, or it was unknown).
+			if (framesDecoded != this.samplesContainer[0].length()) {
+				this.growSampleArrays(framesDecoded);
 			}
+			this.frameLength = framesDecoded;
 			
-		} catch (Exception e) {
-			e.printStackTrace();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			this.audioInputStream.close();
+		}
+	}
+	
+	/**
+	 * Fills the chunk with whole frames. AudioInputStream.read() may return short
+	 * reads, so keep reading until the chunk is full or the stream is exhausted.
+	 * 
+	 * @param chunk
+	 * @return the number of bytes read (always a multiple of the frame size), or 0 at the end of the stream.
+	 * @throws IOException
+	 */
+	private final int readChunk(byte[] chunk) throws IOException {
+		int total = 0;
+		while (total < chunk.length) {
+			int read = this.audioInputStream.read(chunk, total, chunk.length - total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total - (total % this.getFrameSize());
+	}
+	
+	/**
+	 * Resizes each channel's sample buffer (and the PeakPyramid) to the given
+	 * length, keeping what has already been decoded.
+	 * 
+	 * @param length
+	 */
+	private final void growSampleArrays(int length) {
+		int newLength = length;
+		if (length > this.samplesContainer[0].length()) {
+			// Grow geometrically so unknown-length streams don't copy on every chunk.
+			newLength = (int) Math.min(Integer.MAX_VALUE, Math.max((long) length, this.samplesContainer[0].length() * 2L));
+		}
+		for (int a = 0; a < this.samplesContainer.length; a++) {
+			this.samplesContainer[a] = this.samplesContainer[a].resize(newLength);
+		}
+		this.peakPyramid.setCapacity(newLength);
+	}
+	
+	private final BlockingQueue<Chunk> createChunks(int count) {
+		BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(count);
+		for (int i = 0; i < count; i++) {
+			chunks.add(new Chunk());
+		}
+		if (this.metrics != null) {
+			this.metrics.addScratch((long) count * CHUNK_FRAMES * (this.getFrameSize() + 4L * this.getNumberOfChannels()));
+		}
+		return chunks;
+	}
+	
+	private static final ExecutorService createExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new DaemonThreadFactory("AudioSample decoder"));
+	}
+	
+	private static final Chunk take(BlockingQueue<Chunk> chunks) throws IOException {
+		try {
+			return chunks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while decoding.");
+		}
+	}
+	
+	/**
+	 * Waits for every task to finish, rethrowing the first failure.
+	 * 
+	 * @param tasks
+	 * @throws IOException
+	 */
+	private static final void awaitAll(List<Future<?>> tasks) throws IOException {
+		try {
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while decoding.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} finally {
+			tasks.clear();
 		}
 	}
 	
@@ -222,12 +1196,13 @@ public class AudioSample {
 	 * now, I'm going to implement a check.
 	 * 
 	 * @param eightBitByteArray
+	 * @param length the number of valid bytes in the array
 	 * @return
 	 */
-	private final boolean is8BitUnsigned(byte[] eightBitByteArray) {
+	private final boolean is8BitUnsigned(byte[] eightBitByteArray, int length) {
 		
 		// Loop through the array of bytes
-		for (int t = 0; t < eightBitByteArray.length; t++) {
+		for (int t = 0; t < length; t++) {
 			
 			// Get a byte.
 			byte eightBitSample = (byte) eightBitByteArray[t];
@@ -252,21 +1227,23 @@ public class AudioSample {
 	}
 	
 	/**
-	 * Ensures the bytes in this array are unsigned.
+	 * Ensures the bytes in this array are unsigned. Whether or not they need
+	 * shifting was decided from the first chunk (see is8BitUnsigned).
 	 * 
 	 * @param eightBitByteArray
+	 * @param length the number of valid bytes in the array
 	 * @return
 	 */
-	private final byte[] ensure8bitUnsigned(byte[] eightBitByteArray) {
+	private final byte[] ensure8bitUnsigned(byte[] eightBitByteArray, int length) {
 		
-		if(this.is8BitUnsigned(eightBitByteArray)) {
+		if(! this.shift8BitSamples) {
 			// We're good!
 			return eightBitByteArray;
 		}
 		
 		// TODO Change the encoding to be PCM_SIGNED? Does it matter?
 		
-		for (int t = 0; t < eightBitByteArray.length; t++) {
+		for (int t = 0; t < length; t++) {
 			eightBitByteArray[t] += 128;
 		}
 		
@@ -277,136 +1254,274 @@ public class AudioSample {
 	 * Support for linear (PCM) 8-bit audio.
 	 * 
 	 * @param eightBitByteArray
-	 * @return
+	 * @param length the number of valid bytes in the array
+	 * @param chunk where the samples (and their min/max) are written
 	 */
-	private final int[][] get8BitSampleArray(byte[] eightBitByteArray) {
+	private final void get8BitSampleArray(byte[] eightBitByteArray, int length, Chunk chunk) {
 
-		int chan = this.getNumberOfChannels();
-
-		int len = 0;
-		
-		if(chan == 1) {
-			len = eightBitByteArray.length;
-		} else {
-			len = eightBitByteArray.length / 2;
-		}
-
-		int[][] toReturn = new int[chan][len];
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		int min = chunk.min;
+		int max = chunk.max;
 
 		int index = 0;
+		int a = 0;
 
-		// Loop through the byte array
-		for (int t = 0; t < eightBitByteArray.length;) {
-			// For each iteration, loop through the channels
-			for (int a = 0; a < this.getNumberOfChannels(); a++) {
-				
-				byte eightBitSample = (byte) eightBitByteArray[t];
-				
-				int sample = this.byteToInt8(eightBitSample);
-				
-				t++;
+		// One pass through the byte array, scattering each sample to its channel.
+		for (int t = 0; t < length; t++) {
+			int sample = this.byteToInt8(eightBitByteArray[t]);
 
-				if (sample < this.sampleMin) {
-					this.sampleMin = sample;
-				} else if (sample > this.sampleMax) {
-					this.sampleMax = sample;
-				}
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
 
-				toReturn[a][index] = sample;
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
 			}
-			index++;
 		}
-
-		return toReturn;
+		
+		chunk.min = min;
+		chunk.max = max;
 	}
 	
 	/**
 	 * Support for 16-bit PCM audio.
 	 * 
 	 * @param eightBitByteArray
-	 * @return
+	 * @param length the number of valid bytes in the array
+	 * @param chunk where the samples (and their min/max) are written
 	 */
-	private final int[][] get16BitSampleArray(byte[] eightBitByteArray) {
+	private final void get16BitSampleArray(byte[] eightBitByteArray, int length, Chunk chunk) {
 		
-		int chan = this.getNumberOfChannels();
-		
-		int len = eightBitByteArray.length / ( 2 * chan );
-		
-		int[][] toReturn = new int[chan][len];
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		// Which of each pair of bytes is the high one.
+		final int high = this.isBigEndian() ? 0 : 1;
+		int min = chunk.min;
+		int max = chunk.max;
 		
 		int index = 0;
+		int a = 0;
 
-		// Loop through the byte array
-		for (int t = 0; t < eightBitByteArray.length;) {
-			// For each iteration, loop through the channels
-			for (int a = 0; a < this.getNumberOfChannels(); a++) {
+		// One pass through the byte array, scattering each sample to its channel.
+		for (int t = 0; t < length; t += 2) {
+			int sample = this.bytesToInt16(eightBitByteArray[t + high], eightBitByteArray[t + 1 - high]);
 
-					byte low = eightBitByteArray[t];
-					t++;
-					
-					byte high = eightBitByteArray[t];
-					t++;
-					
-					int sample = this.bytesToInt16(high, low);
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
 
-					if (sample < this.sampleMin) {
-						this.sampleMin = sample;
-					} else if (sample > this.sampleMax) {
-						this.sampleMax = sample;
-					}
-					
-					toReturn[a][index] = sample;
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
 			}
-			index++;
 		}
-
-		return toReturn;
+		
+		chunk.min = min;
+		chunk.max = max;
 	}
 	
 	/**
-	 * Support for 24-bit PCM audio.
+	 * Support for 16-bit PCM audio, a channel at a time (see
+	 * AudioSampleOptions.setBulkDecoding()). Each sample is a single load
+	 * through the chunk's ByteBuffer (which takes care of the byte order), and
+	 * with no channel to switch between and no branches in the min/max, the
+	 * inner loop is short enough for the JIT to unroll.
 	 * 
-	 * @param eightBitByteArray
-	 * @return
+	 * @param buffer
+	 * @param length the number of valid bytes in the buffer
+	 * @param chunk where the samples (and their min/max) are written
 	 */
-	private final int[][] get24BitSampleArray(byte[] eightBitByteArray) {
+	private final void get16BitChannels(ByteBuffer buffer, int length, Chunk chunk) {
 		
-		int chan = this.getNumberOfChannels();
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		final int stride = 2 * chan;
+		final int frames = length / stride;
+		int min = chunk.min;
+		int max = chunk.max;
 		
-		int len = eightBitByteArray.length / ( 3 * chan );
+		for (int a = 0; a < chan; a++) {
+			final int[] samples = toReturn[a];
+			for (int index = 0, t = 2 * a; index < frames; index++, t += stride) {
+				int sample = buffer.getShort(t);
+				samples[index] = sample;
+				min = Math.min(min, sample);
+				max = Math.max(max, sample);
+			}
+		}
 		
-		int[][] toReturn = new int[chan][len];
+		chunk.min = min;
+		chunk.max = max;
+	}
+	
+	/**
+	 * Support for 24-bit PCM audio.
+	 * 
+	 * @param eightBitByteArray
+	 * @param length the number of valid bytes in the array
+	 * @param chunk where the samples (and their min/max) are written
+	 */
+	private final void get24BitSampleArray(byte[] eightBitByteArray, int length, Chunk chunk) {
+		
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		final boolean bigEndian = this.isBigEndian();
+		int min = chunk.min;
+		int max = chunk.max;
 		
 		int index = 0;
+		int a = 0;
 
-		// Loop through the byte array
-		for (int t = 0; t < eightBitByteArray.length;) {
-			// For each iteration, loop through the channels
-			for (int a = 0; a < this.getNumberOfChannels(); a++) {
+		// One pass through the byte array, scattering each sample to its channel.
+		for (int t = 0; t < length; t += 3) {
+			int sample = bytesToInt24(eightBitByteArray[t], eightBitByteArray[t + 1], eightBitByteArray[t + 2], bigEndian);
 
-					byte low = eightBitByteArray[t];
-					t++;
-					
-					byte mid = eightBitByteArray[t];
-					t++;
-					
-					byte high = eightBitByteArray[t];
-					t++;
-					
-					int sample = bytesToInt24(low, mid, high, this.isBigEndian());
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
 
-					if (sample < this.sampleMin) {
-						this.sampleMin = sample;
-					} else if (sample > this.sampleMax) {
-						this.sampleMax = sample;
-					}
-					
-					toReturn[a][index] = sample;
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
 			}
-			index++;
 		}
-
-		return toReturn;
+		
+		chunk.min = min;
+		chunk.max = max;
+	}
+	
+	/**
+	 * Support for 8-bit A-law and u-law audio, expanded to 16 bits through a
+	 * lookup table (see G711).
+	 * 
+	 * @param eightBitByteArray
+	 * @param length the number of valid bytes in the array
+	 * @param chunk where the samples (and their min/max) are written
+	 * @param table G711.ALAW or G711.ULAW
+	 */
+	private final void getCompandedSampleArray(byte[] eightBitByteArray, int length, Chunk chunk, int[] table) {
+		
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		int min = chunk.min;
+		int max = chunk.max;
+		
+		int index = 0;
+		int a = 0;
+		
+		for (int t = 0; t < length; t++) {
+			int sample = table[eightBitByteArray[t] & 0xFF];
+			
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
+			
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
+			}
+		}
+		
+		chunk.min = min;
+		chunk.max = max;
+	}
+	
+	/**
+	 * Support for 32-bit PCM audio, read through an IntBuffer view of the
+	 * chunk's bytes (which takes care of the byte order).
+	 * 
+	 * @param buffer
+	 * @param length the number of valid bytes in the buffer
+	 * @param chunk where the samples (and their min/max) are written
+	 */
+	private final void get32BitSampleArray(ByteBuffer buffer, int length, Chunk chunk) {
+		
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		final IntBuffer ints = buffer.asIntBuffer();
+		final int count = length / 4;
+		int min = chunk.min;
+		int max = chunk.max;
+		
+		int index = 0;
+		int a = 0;
+		
+		for (int t = 0; t < count; t++) {
+			int sample = ints.get(t);
+			
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
+			
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
+			}
+		}
+		
+		chunk.min = min;
+		chunk.max = max;
+	}
+	
+	/**
+	 * Support for 32-bit and 64-bit floating point audio, read through a
+	 * FloatBuffer or DoubleBuffer view of the chunk's bytes. Samples are scaled
+	 * by FLOAT_SCALE; anything past full scale is clipped.
+	 * 
+	 * @param buffer
+	 * @param length the number of valid bytes in the buffer
+	 * @param chunk where the samples (and their min/max) are written
+	 */
+	private final void getFloatSampleArray(ByteBuffer buffer, int length, Chunk chunk) {
+		
+		final int[][] toReturn = chunk.samples;
+		final int chan = toReturn.length;
+		final boolean doubles = (this.getBitsPerSample() == 64);
+		final FloatBuffer floats = doubles ? null : buffer.asFloatBuffer();
+		final DoubleBuffer doubleValues = doubles ? buffer.asDoubleBuffer() : null;
+		final int count = length / (this.getBitsPerSample() / 8);
+		int min = chunk.min;
+		int max = chunk.max;
+		
+		int index = 0;
+		int a = 0;
+		
+		for (int t = 0; t < count; t++) {
+			// Casting to int saturates, which is the clipping we want.
+			int sample = (int) ((doubles ? doubleValues.get(t) : floats.get(t)) * FLOAT_SCALE);
+			
+			if (sample < min) {
+				min = sample;
+			} else if (sample > max) {
+				max = sample;
+			}
+			
+			toReturn[a][index] = sample;
+			if (++a == chan) {
+				a = 0;
+				index++;
+			}
+		}
+		
+		chunk.min = min;
+		chunk.max = max;
 	}
 	
 	private final int bytesToInt24(byte low, byte mid, byte high, boolean bigEndian) {
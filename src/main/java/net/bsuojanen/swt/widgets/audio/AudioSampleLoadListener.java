@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+
+/**
+ * Receives the progress and outcome of an AudioSampleLoader load. Methods are
+ * usually called on a loading thread, not the SWT UI thread; use
+ * Display.asyncExec() before touching widgets (WaveformComposite.load() does
+ * this for you).
+ *
+ * Only loadCompleted() has to be implemented.
+ */
+public abstract class AudioSampleLoadListener {
+
+	/**
+	 * The header has been read and the summary allocated, but (unless it came
+	 * from a PeakCache) nothing has been decoded yet. The sample can already be
+	 * drawn: only its first getDecodedFrames() frames are filled in, and that
+	 * number grows as loadProgress() is called.
+	 * 
+	 * @param sample
+	 */
+	public void loadStarted(final AudioSample sample) {
+	}
+
+	/**
+	 * Called as chunks of the file are decoded.
+	 * 
+	 * @param file
+	 * @param framesDecoded
+	 * @param totalFrames the length of the file, or -1 if it isn't known up front.
+	 */
+	public void loadProgress(final File file, final long framesDecoded, final long totalFrames) {
+	}
+
+	/**
+	 * The file has been fully decoded.
+	 * 
+	 * @param sample
+	 */
+	public abstract void loadCompleted(final AudioSample sample);
+
+	/**
+	 * The file couldn't be opened or decoded (ex. UnsupportedAudioFileException).
+	 * 
+	 * @param file
+	 * @param e
+	 */
+	public void loadFailed(final File file, final Exception e) {
+	}
+
+	/**
+	 * The load was canceled through its Future before it completed.
+	 * 
+	 * @param file
+	 */
+	public void loadCanceled(final File file) {
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Opens AudioSamples on background threads, so the UI doesn't freeze while a
+ * long file is decoded.
+ *
+ * load() returns immediately with a Future. Decoding progress and the outcome
+ * are reported to an AudioSampleLoadListener, and calling cancel(true) on the
+ * Future stops the decode at the next chunk (the listener gets loadCanceled()).
+ *
+ * Example:
+ *
+ * Future<AudioSample> load = AudioSampleLoader.getDefault().load(file, options, listener);
+ * ...
+ * load.cancel(true); // the user changed their mind
+ */
+public final class AudioSampleLoader {
+
+	private static AudioSampleLoader defaultLoader;
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param maximumConcurrentLoads the number of files decoded at once; further loads wait their turn.
+	 */
+	public AudioSampleLoader(final int maximumConcurrentLoads) {
+		this.executor = Executors.newFixedThreadPool(maximumConcurrentLoads, new DaemonThreadFactory("AudioSampleLoader"));
+	}
+
+	/**
+	 * A shared loader that decodes up to two files at once.
+	 * 
+	 * @return
+	 */
+	public static final synchronized AudioSampleLoader getDefault() {
+		if (defaultLoader == null) {
+			defaultLoader = new AudioSampleLoader(2);
+		}
+		return defaultLoader;
+	}
+
+	/**
+	 * Opens the file in the background.
+	 * 
+	 * @param file
+	 * @param options
+	 * @param listener may be null
+	 * @return the pending sample; cancel(true) stops the decode.
+	 */
+	public final Future<AudioSample> load(final File file, final AudioSampleOptions options, final AudioSampleLoadListener listener) {
+		final FutureTask<AudioSample> task = new FutureTask<AudioSample>(new Callable<AudioSample>() {
+			public AudioSample call() throws Exception {
+				SampleCache sampleCache = options.getSampleCache();
+				if (sampleCache != null) {
+					return sampleCache.get(file, options, listener);
+				}
+				AudioSample sample = new AudioSample(file, options, listener);
+				sample.open();
+				// Here rather than on the first getAudio(), which may well be on the UI thread.
+				sample.ensureSamplesAvailable();
+				return sample;
+			}
+		}) {
+			protected void done() {
+				if (listener == null) {
+					return;
+				}
+				if (this.isCancelled()) {
+					listener.loadCanceled(file);
+					return;
+				}
+				try {
+					listener.loadCompleted(this.get());
+				} catch (CancellationException e) {
+					listener.loadCanceled(file);
+				} catch (InterruptedException e) {
+					// Can't happen; done() is only called once the task has finished.
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					listener.loadFailed(file, (cause instanceof Exception) ? (Exception) cause : e);
+				}
+			}
+		};
+		this.executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Stops accepting loads and cancels the ones in progress.
+	 */
+	public final void shutdown() {
+		this.executor.shutdownNow();
+	}
+}
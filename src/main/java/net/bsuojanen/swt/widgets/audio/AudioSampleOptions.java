@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Settings for opening an AudioSample. The defaults (no peak cache, decode on
+ * the calling thread) match new AudioSample(file).
+ */
+public final class AudioSampleOptions {
+
+	private PeakCache peakCache = null;
+	private SampleCache sampleCache = null;
+	private int parallelism = 1;
+	private boolean bulkDecoding = true;
+	private MarkerOptions markerOptions = null;
+
+	public AudioSampleOptions() {
+	}
+
+	public final PeakCache getPeakCache() {
+		return this.peakCache;
+	}
+
+	/**
+	 * Summaries are read from, and written to, this cache.
+	 * 
+	 * @param peakCache may be null
+	 * @see PeakCache
+	 */
+	public final void setPeakCache(final PeakCache peakCache) {
+		this.peakCache = peakCache;
+	}
+
+	public final SampleCache getSampleCache() {
+		return this.sampleCache;
+	}
+	
+	/**
+	 * Loads (see AudioSampleLoader and WaveformComposite.load()) share samples
+	 * through this cache instead of decoding the file every time. Constructing
+	 * an AudioSample always decodes; use SampleCache.get() directly for that.
+	 * 
+	 * @param sampleCache may be null
+	 * @see SampleCache
+	 */
+	public final void setSampleCache(final SampleCache sampleCache) {
+		this.sampleCache = sampleCache;
+	}
+
+	public final int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * The number of threads used to decode. With more than one, the file is
+	 * split into frame-aligned chunks that are decoded (and summarized)
+	 * concurrently, and the per-chunk min/max are reduced at the end. For
+	 * example, to use every core:
+	 * 
+	 * options.setParallelism(Runtime.getRuntime().availableProcessors());
+	 * 
+	 * @param parallelism 1 (the default) decodes on the calling thread.
+	 */
+	public final void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	public final MarkerOptions getMarkerOptions() {
+		return this.markerOptions;
+	}
+
+	/**
+	 * Finds the silences and onsets of the sample while it's decoded, for
+	 * jumping between them (see AudioSample.getMarkerIndex()). A sample shared
+	 * through a SampleCache keeps whatever markers it was first opened with.
+	 * 
+	 * @param markerOptions may be null (the default) for none.
+	 * @see MarkerIndex
+	 */
+	public final void setMarkerOptions(final MarkerOptions markerOptions) {
+		this.markerOptions = markerOptions;
+	}
+
+	public final boolean isBulkDecoding() {
+		return this.bulkDecoding;
+	}
+
+	/**
+	 * Whether 16-bit PCM is decoded a channel at a time, with the min/max
+	 * worked out without branching, rather than a sample at a time. It's
+	 * quicker on a single thread, especially for stereo, and gives the same
+	 * samples. Other formats are always decoded a sample at a time.
+	 * 
+	 * @param bulkDecoding true (the default) for the channel at a time decoder.
+	 */
+	public final void setBulkDecoding(final boolean bulkDecoding) {
+		this.bulkDecoding = bulkDecoding;
+	}
+}
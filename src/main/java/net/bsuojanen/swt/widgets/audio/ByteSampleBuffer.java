@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * 8-bit samples, one byte each.
+ */
+final class ByteSampleBuffer extends SampleBuffer {
+
+	private final byte[] samples;
+
+	ByteSampleBuffer(int length) {
+		this.samples = new byte[length];
+	}
+
+	private ByteSampleBuffer(byte[] samples) {
+		this.samples = samples;
+	}
+
+	public final int length() {
+		return this.samples.length;
+	}
+
+	public final int get(int index) {
+		return this.samples[index];
+	}
+
+	public final long getSizeInBytes() {
+		return this.samples.length;
+	}
+
+	public final void get(int index, int[] dest, int destOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			dest[destOffset + i] = this.samples[index + i];
+		}
+	}
+
+	final void put(int index, int[] src, int srcOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			this.samples[index + i] = (byte) src[srcOffset + i];
+		}
+	}
+
+	final SampleBuffer resize(int length) {
+		byte[] resized = new byte[length];
+		System.arraycopy(this.samples, 0, resized, 0, Math.min(length, this.samples.length));
+		return new ByteSampleBuffer(resized);
+	}
+}
@@ -11,91 +11,543 @@
 package net.bsuojanen.swt.widgets.audio;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ControlAdapter;
+import org.eclipse.swt.events.ControlEvent;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 
 public class ChannelCanvas extends Canvas {
 	
 	protected static final int BACKGROUND_COLOR = SWT.COLOR_BLACK;
 	protected static final int REFERENCE_LINE_COLOR = SWT.COLOR_GRAY;
 	protected static final int WAVEFORM_COLOR = SWT.COLOR_MAGENTA;
+	protected static final int RMS_COLOR = SWT.COLOR_DARK_MAGENTA;
+	protected static final int CURSOR_COLOR = SWT.COLOR_WHITE;
+	protected static final int SILENCE_COLOR = SWT.COLOR_DARK_BLUE;
+	protected static final int ONSET_COLOR = SWT.COLOR_YELLOW;
 
 	private AudioSample sample;
 	private int channelIndex;
+	
+	/**
+	 * Set instead of sample for a live canvas, which shows the newest columns
+	 * of the LiveSample at the right edge and scrolls left as more arrive.
+	 * drawnColumns is how many of them the image is up to date with.
+	 */
+	private LiveSample liveSample;
+	private long drawnColumns = 0;
+	
+	/**
+	 * The frames [visibleStart, visibleEnd) are stretched across the width of
+	 * the canvas. A visibleEnd of -1 means the end of the sample (which, while a
+	 * stream of unknown length is loading, keeps moving).
+	 */
+	private long visibleStart = 0;
+	private long visibleEnd = -1;
+	
+	/**
+	 * The whole canvas, as last drawn. Paint events only copy their damaged
+	 * rectangle out of it; it's redrawn when the canvas is resized, the visible
+	 * range changes or refresh() is called (ex. as more of the sample is decoded).
+	 * 
+	 * With background rendering, imageValid means a new image has been asked
+	 * of the scheduler; until it arrives, paints show the one before.
+	 */
+	private Image image;
+	private boolean imageValid = false;
+	private RenderScheduler scheduler;
+	private boolean backgroundRendering = true;
+	
+	/**
+	 * A live canvas's waveform as a single polyline, (x, y) pairs, two points
+	 * per column. Kept between paints so drawing allocates nothing once the
+	 * width settles.
+	 */
+	private int[] points = new int[0];
+	
+	/**
+	 * Whether the RMS (loudness) envelope is drawn under the peaks.
+	 */
+	private boolean rmsVisible = false;
+	
+	/**
+	 * Whether the sample's silences (shaded) and onsets (lines) are drawn, if
+	 * it has a MarkerIndex.
+	 */
+	private boolean markersVisible = false;
+	
+	/**
+	 * The frame the cursor (playhead) is on, or -1 for none. It's drawn over
+	 * the cached image when painting, never into it, so moving it only damages
+	 * the column it leaves and the one it moves to.
+	 */
+	private long cursorFrame = -1;
+	
+	/**
+	 * How long the last redraw of the image took, for AudioMetrics.
+	 */
+	private long renderNanos = 0;
 
 	public ChannelCanvas(Composite parent, int style, AudioSample sample, int channelIndex) {
-		super(parent, style);
+		// Every pixel comes from the image, so there's no need to clear the background first.
+		super(parent, style | SWT.NO_BACKGROUND);
 		this.sample = sample;
 		this.channelIndex = channelIndex;
+		this.initialize();
+	}
+	
+	/**
+	 * A live canvas. Call appendLiveColumns() (on the UI thread) when the
+	 * sample has new columns; WaveformComposite.setLiveSample() does this.
+	 * 
+	 * @param parent
+	 * @param style
+	 * @param liveSample
+	 * @param channelIndex
+	 */
+	public ChannelCanvas(Composite parent, int style, LiveSample liveSample, int channelIndex) {
+		super(parent, style | SWT.NO_BACKGROUND);
+		this.liveSample = liveSample;
+		this.channelIndex = channelIndex;
+		this.initialize();
+	}
+	
+	private final void initialize() {
+		if (this.sample != null) {
+			this.scheduler = new RenderScheduler(this);
+		}
 		this.setBackground(this.getDisplay().getSystemColor(BACKGROUND_COLOR));
 		this.addPaintListener(new ChannelPainter());
+		this.addControlListener(new ControlAdapter() {
+			public void controlResized(ControlEvent e) {
+				imageValid = false;
+			}
+		});
+		this.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				if (scheduler != null) {
+					scheduler.cancel();
+				}
+				disposeImage();
+			}
+		});
 	}
 	
 	private final class ChannelPainter implements PaintListener {
 		public void paintControl(PaintEvent e) {
-			Canvas canvas = (Canvas) e.widget;
-			int lineHeight = canvas.getSize().y / 2;
-			e.gc.setForeground(e.display.getSystemColor(REFERENCE_LINE_COLOR));
-			e.gc.drawLine(0, lineHeight, (int) canvas.getSize().x, lineHeight);
-			drawWaveform(e, sample.getAudio(channelIndex));
+			AudioMetricsListener metrics = AudioMetrics.getListener();
+			if (metrics == null) {
+				this.paint(e);
+				return;
+			}
+			long start = System.nanoTime();
+			renderNanos = 0;
+			this.paint(e);
+			Rectangle area = getClientArea();
+			metrics.channelPainted(ChannelCanvas.this, area.width, area.height, renderNanos, System.nanoTime() - start);
+		}
+		
+		private final void paint(PaintEvent e) {
+			Image image = getImage();
+			if (image == null) {
+				// Nothing rendered yet.
+				e.gc.setBackground(getBackground());
+				e.gc.fillRectangle(e.x, e.y, e.width, e.height);
+			} else {
+				Rectangle bounds = image.getBounds();
+				Rectangle area = getClientArea();
+				if ( (bounds.width == area.width) && (bounds.height == area.height) ) {
+					e.gc.drawImage(image, e.x, e.y, e.width, e.height, e.x, e.y, e.width, e.height);
+				} else {
+					// The image for the new size is being rendered; stretch the old one until it's here.
+					e.gc.drawImage(image, 0, 0, bounds.width, bounds.height, 0, 0, area.width, area.height);
+				}
+			}
+			
+			int cursorX = getCursorX();
+			if ( (cursorX >= e.x) && (cursorX < e.x + e.width) ) {
+				e.gc.setForeground(e.display.getSystemColor(CURSOR_COLOR));
+				e.gc.drawLine(cursorX, e.y, cursorX, e.y + e.height);
+			}
 		}
 	}
 	
-	protected final void drawWaveform(PaintEvent e, int[] samples) {
-		
-		if (samples == null) {
+	/**
+	 * Moves the cursor, redrawing only the two pixel columns it affects.
+	 * 
+	 * @param frame the frame to put the cursor on, or -1 to hide it.
+	 */
+	public final void setCursorFrame(long frame) {
+		int oldX = this.getCursorX();
+		this.cursorFrame = frame;
+		int newX = this.getCursorX();
+		if (oldX == newX) {
 			return;
 		}
-
-		Canvas canvas = (Canvas) e.widget;
-		int canvasHeight = canvas.getSize().y;
-		int canvasWidth = canvas.getSize().x;
+		int height = this.getClientArea().height;
+		if (oldX >= 0) {
+			this.redraw(oldX, 0, 1, height, false);
+		}
+		if (newX >= 0) {
+			this.redraw(newX, 0, 1, height, false);
+		}
+	}
+	
+	public final long getCursorFrame() {
+		return this.cursorFrame;
+	}
+	
+	/**
+	 * The x coordinate of the cursor, or -1 if there's no cursor or it's out of view.
+	 * 
+	 * @return
+	 */
+	private final int getCursorX() {
+		if ( (this.cursorFrame < 0) || (this.sample == null) ) {
+			return -1;
+		}
+		int width = this.getClientArea().width;
+		long x = (long) ((this.cursorFrame - this.visibleStart) * this.getXScaleFactor(width));
+		return ( (x < 0) || (x >= width) ) ? -1 : (int) x;
+	}
+	
+	/**
+	 * Throws away the cached image and redraws the canvas from the sample.
+	 */
+	public final void refresh() {
+		this.imageValid = false;
+		this.redraw();
+	}
+	
+	/**
+	 * Whether the waveform is rendered on a background thread, so that a paint
+	 * (ex. while the window is being resized) only ever copies an image that's
+	 * ready. Otherwise the same WaveformRasterizer draws it on the UI thread
+	 * when it's out of date, and the paint waits for it. A live canvas is always
+	 * drawn on the UI thread, since it only draws the newest columns.
+	 * 
+	 * @param backgroundRendering true (the default) to render in the background.
+	 */
+	public final void setBackgroundRendering(boolean backgroundRendering) {
+		if (backgroundRendering != this.backgroundRendering) {
+			this.backgroundRendering = backgroundRendering;
+			this.refresh();
+		}
+	}
+	
+	public final boolean isBackgroundRendering() {
+		return this.backgroundRendering;
+	}
+	
+	/**
+	 * Returns the image of the whole canvas, (re)drawing it first if it's out
+	 * of date. With background rendering, the image is asked for instead, and
+	 * the one before is returned (which may be a different size, or null).
+	 * 
+	 * @return the image, or null if the canvas has no area.
+	 */
+	private final Image getImage() {
+		Rectangle area = this.getClientArea();
+		if ( (area.width <= 0) || (area.height <= 0) ) {
+			return null;
+		}
 		
-		int oldX = 0;
-		int oldY = (int) (canvasHeight / 2);
-		int xIndex = 0;
-
-		float increment = this.getIncrement(this.getXScaleFactor( (int) canvasWidth ));
-		e.gc.setForeground(e.display.getSystemColor(WAVEFORM_COLOR));
-
-		int t = 0;
-
-		for (t = 0; t < increment; t += increment) {
-			e.gc.drawLine((int)oldX, (int)oldY, (int)xIndex, (int)oldY);
-			xIndex++;
-			oldX = xIndex;
+		if (this.liveSample != null) {
+			return this.getLiveImage(area);
 		}
-
-		for (; t < samples.length; t += increment) {
-			// TODO - We can probably cache scaleFactor for performance improvement.
-			double scaleFactor = this.getYScaleFactor((int)canvasHeight);
-			double scaledSample = samples[t] * scaleFactor;
-			int y = (int) ((canvasHeight / 2) - (scaledSample));
-			e.gc.drawLine((int)oldX, (int)oldY, (int)xIndex, (int)y);
-
-			xIndex++;
-			oldX = xIndex;
-			oldY = y;
+		
+		if (this.imageValid) {
+			return this.image;
 		}
+		if (this.backgroundRendering) {
+			this.scheduleRender(area.width, area.height);
+		} else {
+			long start = System.nanoTime();
+			ImageData data = this.createRasterizer(area.width, area.height)
+					.render(this.sample, this.channelIndex, this.visibleStart, this.getVisibleEnd());
+			this.setImage(new Image(this.getDisplay(), data));
+			this.renderNanos = System.nanoTime() - start;
+		}
+		this.imageValid = true;
+		return this.image;
 	}
 	
-	public final double getXScaleFactor(int panelWidth) {
-		return (panelWidth / ((double) this.sample.getAudio(0).length));
+	/**
+	 * Returns a live canvas's image, redrawing all of it first if it's out of
+	 * date (appendLiveColumns() keeps it up to date otherwise).
+	 * 
+	 * @param area
+	 * @return
+	 */
+	private final Image getLiveImage(Rectangle area) {
+		if (this.image != null) {
+			Rectangle bounds = this.image.getBounds();
+			if ( (bounds.width != area.width) || (bounds.height != area.height) ) {
+				this.disposeImage();
+			}
+		}
+		if (this.image == null) {
+			this.image = new Image(this.getDisplay(), area.width, area.height);
+			this.imageValid = false;
+		}
+		
+		if (! this.imageValid) {
+			long start = System.nanoTime();
+			GC gc = new GC(this.image);
+			try {
+				gc.setBackground(this.getBackground());
+				gc.fillRectangle(0, 0, area.width, area.height);
+				int lineHeight = area.height / 2;
+				gc.setForeground(this.getDisplay().getSystemColor(REFERENCE_LINE_COLOR));
+				gc.drawLine(0, lineHeight, area.width, lineHeight);
+				this.drawnColumns = this.liveSample.getColumnCount();
+				this.drawLiveColumns(gc, area.width, area.height, this.drawnColumns - area.width);
+			} finally {
+				gc.dispose();
+			}
+			this.imageValid = true;
+			this.renderNanos = System.nanoTime() - start;
+		}
+		return this.image;
 	}
 	
-	public final double getYScaleFactor(int panelHeight) {
-		return (panelHeight / (this.sample.getBiggestSample() * 2 * 1.2));
+	/**
+	 * Asks the scheduler for an image of what's visible now. Earlier requests
+	 * that haven't been rendered yet are dropped.
+	 */
+	private final void scheduleRender(int width, int height) {
+		this.scheduler.schedule(this.createRasterizer(width, height), this.sample, this.channelIndex,
+				this.visibleStart, this.getVisibleEnd());
 	}
 	
-	public final int getIncrement(double xScale) {
+	/**
+	 * A rasterizer that draws the waveform in the canvas's colors, as it's
+	 * set up now. Each render gets its own, since a background one may still
+	 * be using the last.
+	 */
+	private final WaveformRasterizer createRasterizer(int width, int height) {
+		Display display = this.getDisplay();
+		WaveformRasterizer rasterizer = new WaveformRasterizer(width, height);
+		rasterizer.setBackgroundColor(this.getBackground().getRGB());
+		rasterizer.setReferenceLineColor(display.getSystemColor(REFERENCE_LINE_COLOR).getRGB());
+		rasterizer.setWaveformColor(display.getSystemColor(WAVEFORM_COLOR).getRGB());
+		rasterizer.setRmsColor(display.getSystemColor(RMS_COLOR).getRGB());
+		rasterizer.setSilenceColor(display.getSystemColor(SILENCE_COLOR).getRGB());
+		rasterizer.setOnsetColor(display.getSystemColor(ONSET_COLOR).getRGB());
+		rasterizer.setRmsVisible(this.rmsVisible);
+		rasterizer.setMarkersVisible(this.markersVisible);
+		return rasterizer;
+	}
+	
+	/**
+	 * Called by the RenderScheduler, on the UI thread, with the image last asked for.
+	 * 
+	 * @param data
+	 * @param renderNanos how long rasterizing it took, for AudioMetrics
+	 */
+	final void imageRendered(ImageData data, long renderNanos) {
+		long start = System.nanoTime();
+		this.setImage(new Image(this.getDisplay(), data));
+		AudioMetricsListener metrics = AudioMetrics.getListener();
+		if (metrics != null) {
+			metrics.channelRendered(this, data.width, data.height, renderNanos + (System.nanoTime() - start));
+		}
+		this.redraw();
+	}
+	
+	private final void setImage(Image image) {
+		if (this.image != null) {
+			this.image.dispose();
+		}
+		this.image = image;
+	}
+	
+	private final void disposeImage() {
+		if (this.image != null) {
+			this.image.dispose();
+			this.image = null;
+		}
+		this.imageValid = false;
+	}
+	
+	/**
+	 * Scrolls the image left by the number of columns added to the live sample
+	 * since it was last drawn, and draws only those. Nothing already on screen
+	 * is recomputed.
+	 */
+	public final void appendLiveColumns() {
+		if ( (this.liveSample == null) || (this.image == null) || (! this.imageValid) ) {
+			this.redraw();
+			return;
+		}
+		long count = this.liveSample.getColumnCount();
+		int added = (int) Math.min(Integer.MAX_VALUE, count - this.drawnColumns);
+		Rectangle bounds = this.image.getBounds();
+		if (added <= 0) {
+			return;
+		}
+		if (added >= bounds.width) {
+			this.refresh();
+			return;
+		}
+		
+		GC gc = new GC(this.image);
 		try {
-			int increment = (int) (this.sample.getAudio(0).length / (this.sample.getAudio(0).length * xScale));
-			return increment;
-		} catch (Exception e) {
-			e.printStackTrace();
+			int keep = bounds.width - added;
+			gc.copyArea(added, 0, keep, bounds.height, 0, 0);
+			gc.setBackground(this.getBackground());
+			gc.fillRectangle(keep, 0, added, bounds.height);
+			int lineHeight = bounds.height / 2;
+			gc.setForeground(this.getDisplay().getSystemColor(REFERENCE_LINE_COLOR));
+			gc.drawLine(keep, lineHeight, bounds.width, lineHeight);
+			this.drawnColumns = count;
+			// Starting one column early joins the new columns to the old ones.
+			this.drawLiveColumns(gc, bounds.width, bounds.height, count - added - 1);
+		} finally {
+			gc.dispose();
 		}
-		return -1;
+		this.redraw();
+	}
+	
+	/**
+	 * Draws the live sample's columns from firstColumn up to drawnColumns, the
+	 * last of them at the right edge.
+	 * 
+	 * @param gc
+	 * @param canvasWidth
+	 * @param canvasHeight
+	 * @param firstColumn
+	 */
+	private final void drawLiveColumns(GC gc, int canvasWidth, int canvasHeight, long firstColumn) {
+		LiveSample live = this.liveSample;
+		long first = Math.max(Math.max(firstColumn, live.getFirstColumn()), this.drawnColumns - canvasWidth);
+		int count = (int) (this.drawnColumns - first);
+		if (count <= 0) {
+			return;
+		}
+		
+		int middle = canvasHeight / 2;
+		double yScale = canvasHeight / (live.getFullScale() * 2.0);
+		int left = canvasWidth - count;
+		
+		if (this.points.length != canvasWidth * 4) {
+			this.points = new int[canvasWidth * 4];
+		}
+		int[] points = this.points;
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			int x = left + i;
+			int top = (int) (middle - (live.getMax(this.channelIndex, first + i) * yScale));
+			int bottom = (int) (middle - (live.getMin(this.channelIndex, first + i) * yScale));
+			points[n++] = x;
+			points[n++] = ((i & 1) == 0) ? top : bottom;
+			points[n++] = x;
+			points[n++] = ((i & 1) == 0) ? bottom : top;
+		}
+		// drawPolyline() takes the whole array, so pad the rest of it with the last point.
+		for (int i = n; i < points.length; i += 2) {
+			points[i] = points[n - 2];
+			points[i + 1] = points[n - 1];
+		}
+		gc.setForeground(this.getDisplay().getSystemColor(WAVEFORM_COLOR));
+		gc.drawPolyline(points);
+	}
+	
+	/**
+	 * Sets the frames shown across the width of the canvas, and redraws it.
+	 * Usually called by WaveformComposite.setVisibleRange().
+	 * 
+	 * @param start
+	 * @param end the frame after the last visible one, or -1 for the end of the sample.
+	 */
+	public final void setVisibleRange(long start, long end) {
+		this.visibleStart = start;
+		this.visibleEnd = end;
+		this.refresh();
+	}
+	
+	/**
+	 * Shows or hides the RMS envelope, drawn under the peak waveform.
+	 * 
+	 * @param visible
+	 */
+	public final void setRmsVisible(boolean visible) {
+		if (visible != this.rmsVisible) {
+			this.rmsVisible = visible;
+			this.refresh();
+		}
+	}
+	
+	public final boolean isRmsVisible() {
+		return this.rmsVisible;
+	}
+	
+	/**
+	 * Shows or hides the sample's silences and onsets (see
+	 * AudioSample.getMarkerIndex()). Silences are shaded under the waveform
+	 * and onsets are lines over it.
+	 * 
+	 * @param visible
+	 */
+	public final void setMarkersVisible(boolean visible) {
+		if (visible != this.markersVisible) {
+			this.markersVisible = visible;
+			this.refresh();
+		}
+	}
+	
+	public final boolean isMarkersVisible() {
+		return this.markersVisible;
+	}
+	
+	public final long getVisibleStart() {
+		return this.visibleStart;
+	}
+	
+	/**
+	 * @return the frame after the last visible one, or 0 on a live canvas (which has no frames to show, only columns).
+	 */
+	public final long getVisibleEnd() {
+		if (this.visibleEnd >= 0) {
+			return this.visibleEnd;
+		}
+		return (this.sample == null) ? 0 : this.sample.getNumberOfFrames();
+	}
+	
+	/**
+	 * The frame under an x coordinate of the canvas.
+	 * 
+	 * @param x
+	 * @return the frame, or -1 on a live canvas.
+	 */
+	public final long getFrameAt(int x) {
+		if (this.sample == null) {
+			return -1;
+		}
+		double framesPerPixel = 1 / this.getXScaleFactor(this.getClientArea().width);
+		return this.visibleStart + (long) (x * framesPerPixel);
+	}
+	
+	/**
+	 * Pixels per frame of the visible range.
+	 * 
+	 * @param panelWidth
+	 * @return
+	 */
+	public final double getXScaleFactor(int panelWidth) {
+		return (panelWidth / ((double) (this.getVisibleEnd() - this.visibleStart)));
+	}
+	
+	public final double getYScaleFactor(int panelHeight) {
+		return (panelHeight / (this.sample.getBiggestSample() * 2 * 1.2));
 	}
 }
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the threads of our pools and keeps them from holding the VM open
+ * after the application's last window closes.
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+
+	private final String name;
+	private final AtomicInteger count = new AtomicInteger();
+
+	DaemonThreadFactory(final String name) {
+		this.name = name;
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, this.name + " " + this.count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
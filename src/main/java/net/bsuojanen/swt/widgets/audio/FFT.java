@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * An in-place, radix-2 complex FFT of one size. The twiddle factors and the
+ * bit-reversal permutation are worked out once, so transforming allocates
+ * nothing. Not thread-safe; use one per thread.
+ */
+final class FFT {
+
+	private final int size;
+	private final int[] reversed;
+	private final double[] cos;
+	private final double[] sin;
+
+	/**
+	 * @param size a power of two
+	 */
+	FFT(int size) {
+		if ( (size < 2) || ((size & (size - 1)) != 0) ) {
+			throw new IllegalArgumentException("The FFT size must be a power of two.");
+		}
+		this.size = size;
+		this.reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			this.reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+		this.cos = new double[size / 2];
+		this.sin = new double[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			this.cos[i] = Math.cos(-2 * Math.PI * i / size);
+			this.sin[i] = Math.sin(-2 * Math.PI * i / size);
+		}
+	}
+
+	final int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Transforms re and im (each of the FFT's size) in place.
+	 *
+	 * @param re
+	 * @param im
+	 */
+	final void transform(double[] re, double[] im) {
+		int n = this.size;
+		for (int i = 0; i < n; i++) {
+			int j = this.reversed[i];
+			if (j > i) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for (int half = 1; half < n; half <<= 1) {
+			int step = n / (half * 2);
+			for (int start = 0; start < n; start += half * 2) {
+				for (int k = 0; k < half; k++) {
+					double wr = this.cos[k * step];
+					double wi = this.sin[k * step];
+					int a = start + k;
+					int b = a + half;
+					double tr = re[b] * wr - im[b] * wi;
+					double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A Hann window of the given size.
+	 *
+	 * @param size
+	 * @return
+	 */
+	static final double[] hann(int size) {
+		double[] window = new double[size];
+		for (int i = 0; i < size; i++) {
+			window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+		}
+		return window;
+	}
+}
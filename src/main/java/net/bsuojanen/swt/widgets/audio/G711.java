@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Lookup tables for the two companded (G.711) telephony encodings. Each 8-bit
+ * code expands to a 16-bit linear sample, so decoding is a single array lookup
+ * per sample: index the table with (code & 0xFF).
+ */
+final class G711 {
+
+	/**
+	 * A-law code to 16-bit linear sample.
+	 */
+	static final int[] ALAW = new int[256];
+
+	/**
+	 * u-law code to 16-bit linear sample.
+	 */
+	static final int[] ULAW = new int[256];
+
+	static {
+		for (int code = 0; code < 256; code++) {
+			ALAW[code] = alawToLinear(code);
+			ULAW[code] = ulawToLinear(code);
+		}
+	}
+
+	private G711() {
+	}
+
+	private static final int alawToLinear(int code) {
+		code ^= 0x55;
+		int segment = (code & 0x70) >> 4;
+		int value = (code & 0x0F) << 4;
+		switch (segment) {
+		case 0:
+			value += 8;
+			break;
+		case 1:
+			value += 0x108;
+			break;
+		default:
+			value = (value + 0x108) << (segment - 1);
+		}
+		return ((code & 0x80) != 0) ? value : -value;
+	}
+
+	private static final int ulawToLinear(int code) {
+		code = ~code;
+		int value = (((code & 0x0F) << 3) + 0x84) << ((code & 0x70) >> 4);
+		return ((code & 0x80) != 0) ? (0x84 - value) : (value - 0x84);
+	}
+}
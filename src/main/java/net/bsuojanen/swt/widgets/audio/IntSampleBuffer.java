@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Samples that need all four bytes of an int.
+ */
+final class IntSampleBuffer extends SampleBuffer {
+
+	private final int[] samples;
+
+	IntSampleBuffer(int length) {
+		this.samples = new int[length];
+	}
+
+	private IntSampleBuffer(int[] samples) {
+		this.samples = samples;
+	}
+
+	public final int length() {
+		return this.samples.length;
+	}
+
+	public final int get(int index) {
+		return this.samples[index];
+	}
+
+	public final long getSizeInBytes() {
+		return this.samples.length * 4L;
+	}
+
+	public final void get(int index, int[] dest, int destOffset, int count) {
+		System.arraycopy(this.samples, index, dest, destOffset, count);
+	}
+
+	final void put(int index, int[] src, int srcOffset, int count) {
+		System.arraycopy(src, srcOffset, this.samples, index, count);
+	}
+
+	final SampleBuffer resize(int length) {
+		int[] resized = new int[length];
+		System.arraycopy(this.samples, 0, resized, 0, Math.min(length, this.samples.length));
+		return new IntSampleBuffer(resized);
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Audio that keeps arriving (ex. from a microphone, or a file that's still
+ * being recorded), summarized as it's written. Unlike an AudioSample there's no
+ * end and no random access to the samples: each column of framesPerColumn
+ * frames is reduced to its min and max, and only the last capacity columns
+ * are kept, in a ring buffer. Memory use is fixed no matter how long it runs.
+ *
+ * Bytes are written by one thread (usually a LiveSampleFeeder) and read by
+ * others (ex. the UI thread drawing a WaveformComposite). Listeners hear about
+ * new columns on the writing thread.
+ *
+ * Example:
+ *
+ * LiveSample live = new LiveSample(format, 256, 4096);
+ * waveform.setLiveSample(live);
+ * LiveSampleFeeder.fromLine(live, line).start();
+ */
+public final class LiveSample {
+
+	private static final int SCRATCH_FRAMES = 4096;
+
+	private final AudioFormat format;
+	private final AudioSample decoder;
+	private final int channels;
+	private final int framesPerColumn;
+	private final int capacity;
+
+	/**
+	 * [channel][column % capacity]
+	 */
+	private final int[][] min;
+	private final int[][] max;
+
+	/**
+	 * The number of columns ever completed. The ring holds the last
+	 * min(columnCount, capacity) of them.
+	 */
+	private volatile long columnCount = 0;
+
+	/**
+	 * The column being filled.
+	 */
+	private final int[] columnMin;
+	private final int[] columnMax;
+	private int framesInColumn = 0;
+
+	/**
+	 * Raw bytes waiting to be decoded. Bytes of an incomplete frame are kept at
+	 * the front until the rest of the frame arrives.
+	 */
+	private final byte[] bytes;
+	private int pendingBytes = 0;
+	private final int[][] samples;
+
+	private final List<LiveSampleListener> listeners = new CopyOnWriteArrayList<LiveSampleListener>();
+
+	/**
+	 * @param format the format of the bytes that will be written
+	 * @param framesPerColumn how many frames are summarized by each column
+	 * @param capacity how many columns are kept
+	 * @throws UnsupportedAudioFileException if the format can't be decoded.
+	 */
+	public LiveSample(final AudioFormat format, final int framesPerColumn, final int capacity) throws UnsupportedAudioFileException {
+		if ( (framesPerColumn < 1) || (capacity < 1) ) {
+			throw new IllegalArgumentException("framesPerColumn and capacity must be at least 1.");
+		}
+		this.format = format;
+		this.decoder = AudioSample.createDecoder(format);
+		this.channels = format.getChannels();
+		this.framesPerColumn = framesPerColumn;
+		this.capacity = capacity;
+		this.min = new int[this.channels][capacity];
+		this.max = new int[this.channels][capacity];
+		this.columnMin = new int[this.channels];
+		this.columnMax = new int[this.channels];
+		this.bytes = new byte[SCRATCH_FRAMES * format.getFrameSize()];
+		this.samples = new int[this.channels][SCRATCH_FRAMES];
+	}
+
+	public final AudioFormat getFormat() {
+		return this.format;
+	}
+
+	public final int getNumberOfChannels() {
+		return this.channels;
+	}
+
+	public final int getFramesPerColumn() {
+		return this.framesPerColumn;
+	}
+
+	/**
+	 * The number of columns kept.
+	 *
+	 * @return
+	 */
+	public final int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * The number of columns completed since the sample was created. Columns
+	 * [getFirstColumn(), getColumnCount()) can be read.
+	 *
+	 * @return
+	 */
+	public final long getColumnCount() {
+		return this.columnCount;
+	}
+
+	/**
+	 * The oldest column still kept.
+	 *
+	 * @return
+	 */
+	public final long getFirstColumn() {
+		return Math.max(0, this.columnCount - this.capacity);
+	}
+
+	/**
+	 * @param channel
+	 * @param column between getFirstColumn() and getColumnCount()
+	 * @return
+	 */
+	public final int getMin(int channel, long column) {
+		return this.min[channel][(int) (column % this.capacity)];
+	}
+
+	/**
+	 * @param channel
+	 * @param column between getFirstColumn() and getColumnCount()
+	 * @return
+	 */
+	public final int getMax(int channel, long column) {
+		return this.max[channel][(int) (column % this.capacity)];
+	}
+
+	/**
+	 * The largest value a sample can have, for scaling a drawing. Unlike an
+	 * AudioSample's biggest sample this never changes, so what's already been
+	 * drawn never has to be redrawn.
+	 *
+	 * @return
+	 */
+	public final int getFullScale() {
+		return this.decoder.getFullScale();
+	}
+
+	public final void addListener(LiveSampleListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public final void removeListener(LiveSampleListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Decodes and summarizes raw bytes in the sample's format. They don't have
+	 * to end on a frame boundary; the remainder waits for the next write.
+	 *
+	 * Only one thread may write.
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public final void write(byte[] data, int offset, int length) {
+		int frameSize = this.format.getFrameSize();
+		long columnsBefore = this.columnCount;
+
+		while (length > 0) {
+			int count = Math.min(length, this.bytes.length - this.pendingBytes);
+			System.arraycopy(data, offset, this.bytes, this.pendingBytes, count);
+			offset += count;
+			length -= count;
+
+			int available = this.pendingBytes + count;
+			int frames = available / frameSize;
+			this.decoder.decodeFrames(this.bytes, frames, this.samples);
+			this.summarize(frames);
+
+			// Keep the start of an incomplete frame for next time.
+			this.pendingBytes = available - (frames * frameSize);
+			System.arraycopy(this.bytes, frames * frameSize, this.bytes, 0, this.pendingBytes);
+		}
+
+		if (this.columnCount != columnsBefore) {
+			for (LiveSampleListener listener : this.listeners) {
+				listener.columnsAdded(this, this.columnCount);
+			}
+		}
+	}
+
+	/**
+	 * Tells the listeners that no more bytes will be written.
+	 *
+	 * @param e why, if it was an error (ex. the line was closed), or null.
+	 */
+	final void ended(Exception e) {
+		for (LiveSampleListener listener : this.listeners) {
+			listener.ended(this, e);
+		}
+	}
+
+	private final void summarize(int frames) {
+		for (int t = 0; t < frames; t++) {
+			if (this.framesInColumn == 0) {
+				for (int a = 0; a < this.channels; a++) {
+					this.columnMin[a] = this.samples[a][t];
+					this.columnMax[a] = this.samples[a][t];
+				}
+			} else {
+				for (int a = 0; a < this.channels; a++) {
+					int sample = this.samples[a][t];
+					if (sample < this.columnMin[a]) {
+						this.columnMin[a] = sample;
+					}
+					if (sample > this.columnMax[a]) {
+						this.columnMax[a] = sample;
+					}
+				}
+			}
+
+			if (++this.framesInColumn == this.framesPerColumn) {
+				int index = (int) (this.columnCount % this.capacity);
+				for (int a = 0; a < this.channels; a++) {
+					this.min[a][index] = this.columnMin[a];
+					this.max[a][index] = this.columnMax[a];
+				}
+				this.framesInColumn = 0;
+				// Published last, so readers never see a column before it's written.
+				this.columnCount++;
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.TargetDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Copies bytes from a stream into a LiveSample on a background (daemon)
+ * thread, until the stream ends or stop() is called. The stream can be a
+ * TargetDataLine (ex. a microphone) or a file that's still being written.
+ *
+ * Example:
+ *
+ * LiveSampleFeeder feeder = LiveSampleFeeder.fromGrowingWaveFile(file, 256, 4096);
+ * waveform.setLiveSample(feeder.getSample());
+ * feeder.start();
+ * ...
+ * feeder.stop();
+ */
+public final class LiveSampleFeeder {
+
+	/**
+	 * How often a growing file is checked for more data.
+	 */
+	public static final long FILE_POLL_MILLIS = 50;
+
+	private static final int BUFFER_BYTES = 16384;
+
+	private final LiveSample sample;
+	private final InputStream in;
+	private Thread thread;
+	private volatile boolean stopped = false;
+
+	public LiveSampleFeeder(final LiveSample sample, final InputStream in) {
+		this.sample = sample;
+		this.in = in;
+	}
+
+	/**
+	 * Feeds the sample from a line that's open (in the sample's format) and
+	 * started. stop() closes the line.
+	 *
+	 * @param sample
+	 * @param line
+	 * @return
+	 */
+	public static final LiveSampleFeeder fromLine(final LiveSample sample, final TargetDataLine line) {
+		return new LiveSampleFeeder(sample, new AudioInputStream(line));
+	}
+
+	/**
+	 * Feeds the sample from raw bytes appended to a file, starting at the given
+	 * offset.
+	 *
+	 * @param sample
+	 * @param file
+	 * @param offset where the first frame is (ex. after a header)
+	 * @return
+	 * @throws IOException
+	 */
+	public static final LiveSampleFeeder fromGrowingFile(final LiveSample sample, final File file, final long offset) throws IOException {
+		return new LiveSampleFeeder(sample, new TailInputStream(file, offset, FILE_POLL_MILLIS));
+	}
+
+	/**
+	 * Feeds a new sample from a WAVE file that's still being recorded. The
+	 * header (which a recorder writes first) gives the format; the size in it
+	 * is ignored.
+	 *
+	 * @param file
+	 * @param framesPerColumn see LiveSample
+	 * @param capacity see LiveSample
+	 * @return the feeder; getSample() is the new sample.
+	 * @throws IOException
+	 * @throws UnsupportedAudioFileException if the file doesn't start with a PCM WAVE header.
+	 */
+	public static final LiveSampleFeeder fromGrowingWaveFile(final File file, final int framesPerColumn, final int capacity)
+			throws IOException, UnsupportedAudioFileException {
+		// Only the header: mapping data that's about to be outgrown would just tie up address space.
+		WaveFile.Header header = WaveFile.readHeader(file);
+		if (header == null) {
+			throw new UnsupportedAudioFileException(file.getName() + " doesn't have a WAVE header we can read.");
+		}
+		LiveSample sample = new LiveSample(header.getFormat(), framesPerColumn, capacity);
+		return fromGrowingFile(sample, file, header.getDataOffset());
+	}
+
+	public final LiveSample getSample() {
+		return this.sample;
+	}
+
+	/**
+	 * Starts feeding on a new thread.
+	 */
+	public final synchronized void start() {
+		if (this.thread != null) {
+			throw new IllegalStateException("Already started.");
+		}
+		this.thread = new DaemonThreadFactory("LiveSampleFeeder").newThread(new Runnable() {
+			public void run() {
+				feed();
+			}
+		});
+		this.thread.start();
+	}
+
+	/**
+	 * Stops feeding and closes the stream. The sample keeps what it has.
+	 */
+	public final synchronized void stop() {
+		this.stopped = true;
+		if (this.thread != null) {
+			this.thread.interrupt();
+		}
+		try {
+			// Unblocks a read from a line.
+			this.in.close();
+		} catch (IOException e) {
+			// Ignore.
+		}
+	}
+
+	public final boolean isRunning() {
+		return (this.thread != null) && this.thread.isAlive();
+	}
+
+	private final void feed() {
+		Exception error = null;
+		byte[] buffer = new byte[BUFFER_BYTES];
+		try {
+			while (! this.stopped) {
+				int count = this.in.read(buffer);
+				if (count < 0) {
+					break;
+				}
+				this.sample.write(buffer, 0, count);
+			}
+		} catch (IOException e) {
+			// Closing the stream from stop() is expected to break a read.
+			if (! this.stopped) {
+				error = e;
+			}
+		} finally {
+			try {
+				this.in.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+			this.sample.ended(error);
+		}
+	}
+}
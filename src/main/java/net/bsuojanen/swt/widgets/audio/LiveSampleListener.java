@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * Hears about columns as they're added to a LiveSample. Methods are called on
+ * the thread writing to the sample, not the SWT UI thread, and should return
+ * quickly (ex. post to Display.asyncExec()).
+ *
+ * Only columnsAdded() has to be implemented.
+ */
+public abstract class LiveSampleListener {
+
+	/**
+	 * One or more columns were completed.
+	 *
+	 * @param sample
+	 * @param columnCount the sample's column count after the new columns
+	 */
+	public abstract void columnsAdded(final LiveSample sample, final long columnCount);
+
+	/**
+	 * The feeder stopped writing to the sample.
+	 *
+	 * @param sample
+	 * @param e the reason, if it stopped because of an error, or null.
+	 */
+	public void ended(final LiveSample sample, final Exception e) {
+	}
+}
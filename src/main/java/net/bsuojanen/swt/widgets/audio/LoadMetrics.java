@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time went while an AudioSample was opened: reading the header,
+ * reading the bytes, decoding them and building the summary. Handed to
+ * AudioMetricsListener.sampleLoaded() once the load is over.
+ *
+ * With parallel decoding the decode and summary times are added up over every
+ * thread, so together they can be more than getTotalNanos().
+ */
+public final class LoadMetrics {
+
+	private final File file;
+	private final long startNanos = System.nanoTime();
+	private long totalNanos = 0;
+	private long headerNanos = 0;
+	private final AtomicLong readNanos = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+	private final AtomicLong summaryNanos = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private long scratchBytes = 0;
+	private long retainedBytes = 0;
+	private long frames = 0;
+	private int channels = 0;
+	private boolean fromPeakCache = false;
+	private boolean memoryMapped = false;
+
+	LoadMetrics(File file) {
+		this.file = file;
+	}
+
+	public final File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * From the start of the load to the end, on the opening thread.
+	 *
+	 * @return
+	 */
+	public final long getTotalNanos() {
+		return this.totalNanos;
+	}
+
+	/**
+	 * Opening the file and reading its format (for a WAVE file, mapping it).
+	 *
+	 * @return
+	 */
+	public final long getHeaderNanos() {
+		return this.headerNanos;
+	}
+
+	/**
+	 * Reading the audio into the decode buffers, from the stream or the mapping.
+	 *
+	 * @return
+	 */
+	public final long getReadNanos() {
+		return this.readNanos.get();
+	}
+
+	/**
+	 * Turning the bytes into samples, and storing them.
+	 *
+	 * @return
+	 */
+	public final long getDecodeNanos() {
+		return this.decodeNanos.get();
+	}
+
+	/**
+	 * Building the PeakPyramid from the decoded samples.
+	 *
+	 * @return
+	 */
+	public final long getSummaryNanos() {
+		return this.summaryNanos.get();
+	}
+
+	public final long getBytesRead() {
+		return this.bytesRead.get();
+	}
+
+	/**
+	 * The working memory of the decode (its chunks), which is let go when it's over.
+	 *
+	 * @return
+	 */
+	public final long getScratchBytes() {
+		return this.scratchBytes;
+	}
+
+	/**
+	 * What the sample holds on to afterwards (see AudioSample.getSizeInBytes()).
+	 *
+	 * @return
+	 */
+	public final long getRetainedBytes() {
+		return this.retainedBytes;
+	}
+
+	public final long getFrames() {
+		return this.frames;
+	}
+
+	/**
+	 * Samples (frames times channels) loaded per second, over the whole load.
+	 *
+	 * @return
+	 */
+	public final double getSamplesPerSecond() {
+		return (this.totalNanos <= 0) ? 0 : this.frames * (double) this.channels * 1e9 / this.totalNanos;
+	}
+
+	/**
+	 * Whether the summary was restored from a PeakCache, so nothing was decoded.
+	 *
+	 * @return
+	 */
+	public final boolean isFromPeakCache() {
+		return this.fromPeakCache;
+	}
+
+	public final boolean isMemoryMapped() {
+		return this.memoryMapped;
+	}
+
+	final void headerRead() {
+		this.headerNanos = System.nanoTime() - this.startNanos;
+	}
+
+	final void addRead(long bytes, long nanos) {
+		this.bytesRead.addAndGet(bytes);
+		this.readNanos.addAndGet(nanos);
+	}
+
+	final void addDecode(long nanos) {
+		this.decodeNanos.addAndGet(nanos);
+	}
+
+	final void addSummary(long nanos) {
+		this.summaryNanos.addAndGet(nanos);
+	}
+
+	final void addScratch(long bytes) {
+		this.scratchBytes += bytes;
+	}
+
+	final void finish(AudioSample sample, boolean fromPeakCache) {
+		this.totalNanos = System.nanoTime() - this.startNanos;
+		this.fromPeakCache = fromPeakCache;
+		this.memoryMapped = sample.isMemoryMapped();
+		this.retainedBytes = sample.getSizeInBytes();
+		this.frames = sample.getDecodedFrames();
+		this.channels = sample.getNumberOfChannels();
+	}
+
+	public String toString() {
+		return this.file + ": " + this.frames + " frames in " + this.totalNanos / 1000000 + " ms (header "
+				+ this.headerNanos / 1000000 + " ms, read " + this.getReadNanos() / 1000000 + " ms, decode "
+				+ this.getDecodeNanos() / 1000000 + " ms, summary " + this.getSummaryNanos() / 1000000 + " ms), "
+				+ this.getBytesRead() + " bytes read, " + (long) this.getSamplesPerSecond() + " samples/s";
+	}
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * A read-only view of one channel of a memory-mapped WAVE file. Samples are
+ * decoded from the mapping as they're asked for; nothing is held on the heap.
+ */
+final class MappedSampleBuffer extends SampleBuffer {
+
+	private final WaveFile waveFile;
+	private final int channel;
+	private final int length;
+
+	MappedSampleBuffer(WaveFile waveFile, int channel, int length) {
+		this.waveFile = waveFile;
+		this.channel = channel;
+		this.length = length;
+	}
+
+	public final int length() {
+		return this.length;
+	}
+
+	public final int get(int index) {
+		return this.waveFile.getSample(this.channel, index);
+	}
+
+	public final long getSizeInBytes() {
+		return 0;
+	}
+
+	final void put(int index, int[] src, int srcOffset, int count) {
+		throw new UnsupportedOperationException("Memory-mapped samples are read-only.");
+	}
+
+	final SampleBuffer resize(int length) {
+		throw new UnsupportedOperationException("Memory-mapped samples are read-only.");
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * The silent stretches and the onsets (where a sound starts, ex. a drum hit
+ * or a word) of a sample, found while it was decoded. Jumping to the next one
+ * is a binary search, not a walk through the samples.
+ *
+ * Both are found from the PeakPyramid's smallest buckets (256 frames), as
+ * each one joins the decoded prefix (see AudioSample.chunkDecoded()), so they
+ * cost nothing extra to read and are only as precise as a bucket. A bucket is
+ * silent if its peak, on every channel, is at or below the threshold; an onset
+ * is a bucket whose energy (mean square, over every channel) jumps well above
+ * the average of the buckets before it. See MarkerOptions.
+ *
+ * While the sample is loading, only what's been decoded so far is indexed;
+ * a silence still going on at that point isn't listed until it ends.
+ */
+public final class MarkerIndex {
+
+	/**
+	 * The buckets averaged to decide whether the next one is an onset (about
+	 * 46 ms at 44.1 kHz).
+	 */
+	private static final int HISTORY_BUCKETS = 8;
+
+	private final PeakPyramid pyramid;
+	private final int channels;
+	private final int shift;
+	private final double silenceLevel;
+	private final int minimumSilence;
+	private final double onsetRatio;
+	private final double onsetFloor;
+	private final int minimumOnsetGap;
+
+	/**
+	 * The buckets looked at so far, and the number of frames in the sample once
+	 * they've all been (-1 until then).
+	 */
+	private int buckets = 0;
+	private long frames = -1;
+
+	/**
+	 * The first frame of the silence we're in the middle of, or -1.
+	 */
+	private long silenceStart = -1;
+	private int[] silenceStarts = new int[16];
+	private int[] silenceEnds = new int[16];
+	private int silenceCount = 0;
+
+	private final double[] history = new double[HISTORY_BUCKETS];
+	private double historySum = 0;
+	private long lastOnset = -1;
+	private int[] onsets = new int[16];
+	private int onsetCount = 0;
+
+	MarkerIndex(AudioSample sample, PeakPyramid pyramid, MarkerOptions options) {
+		this.pyramid = pyramid;
+		this.channels = sample.getNumberOfChannels();
+		this.shift = Integer.numberOfTrailingZeros(pyramid.getBucketSize(0));
+		double fullScale = sample.getFullScale();
+		this.silenceLevel = fullScale * Math.pow(10, options.getSilenceThreshold() / 20);
+		this.minimumSilence = (int) Math.round(options.getMinimumSilence() * sample.getFramerate());
+		this.onsetRatio = Math.pow(10, options.getOnsetThreshold() / 10);
+		this.onsetFloor = this.silenceLevel * this.silenceLevel;
+		this.minimumOnsetGap = (int) Math.round(options.getMinimumOnsetGap() * sample.getFramerate());
+	}
+
+	/**
+	 * Looks at the buckets that are wholly inside the first frames.
+	 *
+	 * @param frames the number of frames decoded and summarized, from the start.
+	 */
+	final synchronized void extend(int frames) {
+		int buckets = frames >> this.shift;
+		for (int bucket = this.buckets; bucket < buckets; bucket++) {
+			this.addBucket(bucket);
+		}
+		this.buckets = Math.max(this.buckets, buckets);
+	}
+
+	/**
+	 * Looks at the last (partial) bucket and ends the silence the sample ends
+	 * in, if any. Called once everything has been decoded.
+	 *
+	 * @param frames the length of the sample.
+	 */
+	final synchronized void finish(int frames) {
+		this.extend(frames);
+		int buckets = (frames + (1 << this.shift) - 1) >> this.shift;
+		if (buckets > this.buckets) {
+			this.addBucket(this.buckets);
+			this.buckets = buckets;
+		}
+		this.endSilence(frames);
+		this.frames = frames;
+	}
+
+	private final void addBucket(int bucket) {
+		long first = (long) bucket << this.shift;
+		int size = this.pyramid.getFramesIn(0, bucket);
+		long peak = 0;
+		double sumOfSquares = 0;
+		for (int a = 0; a < this.channels; a++) {
+			// As longs, since the lowest 32-bit sample has no positive int.
+			peak = Math.max(peak, Math.max(-(long) this.pyramid.getMin(0, a, bucket), this.pyramid.getMax(0, a, bucket)));
+			sumOfSquares += this.pyramid.getSumOfSquares(0, a, bucket);
+		}
+
+		if (peak <= this.silenceLevel) {
+			if (this.silenceStart < 0) {
+				this.silenceStart = first;
+			}
+		} else {
+			this.endSilence(first);
+		}
+
+		double energy = (size == 0) ? 0 : sumOfSquares / ((double) size * this.channels);
+		int filled = Math.min(bucket, HISTORY_BUCKETS);
+		double average = (filled == 0) ? 0 : this.historySum / filled;
+		if ( (energy > this.onsetFloor) && (energy > average * this.onsetRatio)
+				&& ( (this.lastOnset < 0) || (first - this.lastOnset >= this.minimumOnsetGap) ) ) {
+			this.onsets = ensureCapacity(this.onsets, this.onsetCount);
+			this.onsets[this.onsetCount++] = (int) first;
+			this.lastOnset = first;
+		}
+		int slot = bucket % HISTORY_BUCKETS;
+		this.historySum += energy - ((bucket < HISTORY_BUCKETS) ? 0 : this.history[slot]);
+		this.history[slot] = energy;
+	}
+
+	/**
+	 * Lists the silence we're in, if any (and if it's long enough), as ending at end.
+	 */
+	private final void endSilence(long end) {
+		if (this.silenceStart < 0) {
+			return;
+		}
+		if (end - this.silenceStart >= Math.max(1, this.minimumSilence)) {
+			this.silenceStarts = ensureCapacity(this.silenceStarts, this.silenceCount);
+			this.silenceEnds = ensureCapacity(this.silenceEnds, this.silenceCount);
+			this.silenceStarts[this.silenceCount] = (int) this.silenceStart;
+			this.silenceEnds[this.silenceCount] = (int) end;
+			this.silenceCount++;
+		}
+		this.silenceStart = -1;
+	}
+
+	/**
+	 * The frames looked at so far.
+	 *
+	 * @return
+	 */
+	public final synchronized long getIndexedFrames() {
+		return (this.frames >= 0) ? this.frames : (long) this.buckets << this.shift;
+	}
+
+	public final synchronized int getSilenceCount() {
+		return this.silenceCount;
+	}
+
+	public final synchronized long getSilenceStart(int index) {
+		return this.silenceStarts[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the frame after the silence.
+	 */
+	public final synchronized long getSilenceEnd(int index) {
+		return this.silenceEnds[index];
+	}
+
+	public final synchronized int getOnsetCount() {
+		return this.onsetCount;
+	}
+
+	public final synchronized long getOnset(int index) {
+		return this.onsets[index];
+	}
+
+	/**
+	 * The silence the frame is in, or else the first one after it.
+	 *
+	 * @param frame
+	 * @return an index for getSilenceStart(), or getSilenceCount() if there's none.
+	 */
+	public final synchronized int findSilence(long frame) {
+		return upperBound(this.silenceEnds, this.silenceCount, frame);
+	}
+
+	/**
+	 * The first onset at or after the frame.
+	 *
+	 * @param frame
+	 * @return an index for getOnset(), or getOnsetCount() if there's none.
+	 */
+	public final synchronized int findOnset(long frame) {
+		return upperBound(this.onsets, this.onsetCount, frame - 1);
+	}
+
+	public final synchronized boolean isSilent(long frame) {
+		int index = this.findSilence(frame);
+		return (index < this.silenceCount) && (this.silenceStarts[index] <= frame);
+	}
+
+	/**
+	 * @param frame
+	 * @return the first onset after the frame, or -1 if there isn't one.
+	 */
+	public final synchronized long getNextOnset(long frame) {
+		int index = upperBound(this.onsets, this.onsetCount, frame);
+		return (index < this.onsetCount) ? this.onsets[index] : -1;
+	}
+
+	/**
+	 * @param frame
+	 * @return the last onset before the frame, or -1 if there isn't one.
+	 */
+	public final synchronized long getPreviousOnset(long frame) {
+		int index = upperBound(this.onsets, this.onsetCount, frame - 1) - 1;
+		return (index >= 0) ? this.onsets[index] : -1;
+	}
+
+	/**
+	 * Where the next sound after the frame starts: the end of the next silence
+	 * (or of the one the frame is in).
+	 *
+	 * @param frame
+	 * @return the frame, or -1 if nothing but silence follows.
+	 */
+	public final synchronized long getNextSound(long frame) {
+		int index = upperBound(this.silenceEnds, this.silenceCount, frame);
+		if ( (index < this.silenceCount) && (this.silenceEnds[index] != this.frames) ) {
+			return this.silenceEnds[index];
+		}
+		return -1;
+	}
+
+	/**
+	 * Where the sound before the frame starts: the end of the silence before
+	 * it, or the start of the sample if it doesn't start silent.
+	 *
+	 * @param frame
+	 * @return the frame, or -1 if there's no sound before it.
+	 */
+	public final synchronized long getPreviousSound(long frame) {
+		int index = upperBound(this.silenceEnds, this.silenceCount, frame - 1) - 1;
+		if (index >= 0) {
+			return this.silenceEnds[index];
+		}
+		boolean startsSilent = (this.silenceCount > 0) && (this.silenceStarts[0] == 0);
+		return ( (frame > 0) && (! startsSilent) && (this.buckets > 0) ) ? 0 : -1;
+	}
+
+	/**
+	 * @param frame
+	 * @return the start of the first silence after the frame, or -1 if there isn't one.
+	 */
+	public final synchronized long getNextSilence(long frame) {
+		int index = upperBound(this.silenceStarts, this.silenceCount, frame);
+		return (index < this.silenceCount) ? this.silenceStarts[index] : -1;
+	}
+
+	/**
+	 * The index of the first of the (sorted) values that's greater than key.
+	 */
+	private static final int upperBound(int[] values, int count, long key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] <= key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static final int[] ensureCapacity(int[] values, int count) {
+		if (count < values.length) {
+			return values;
+		}
+		int[] grown = new int[values.length * 2];
+		System.arraycopy(values, 0, grown, 0, count);
+		return grown;
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * What counts as silence and as an onset, for the MarkerIndex an AudioSample
+ * builds while it decodes (see AudioSampleOptions.setMarkerOptions()).
+ */
+public final class MarkerOptions {
+
+	private double silenceThreshold = -60;
+	private double minimumSilence = 0.25;
+	private double onsetThreshold = 9;
+	private double minimumOnsetGap = 0.05;
+
+	public MarkerOptions() {
+	}
+
+	public final double getSilenceThreshold() {
+		return this.silenceThreshold;
+	}
+
+	/**
+	 * Audio whose peaks (on every channel) stay at or below this level is silent.
+	 *
+	 * @param silenceThreshold in dB below full scale, ex. -60 (the default).
+	 */
+	public final void setSilenceThreshold(final double silenceThreshold) {
+		if (silenceThreshold > 0) {
+			throw new IllegalArgumentException("The silence threshold can't be above full scale.");
+		}
+		this.silenceThreshold = silenceThreshold;
+	}
+
+	public final double getMinimumSilence() {
+		return this.minimumSilence;
+	}
+
+	/**
+	 * Shorter gaps (ex. between words or notes) aren't marked as silence.
+	 *
+	 * @param minimumSilence in seconds; 0.25 by default.
+	 */
+	public final void setMinimumSilence(final double minimumSilence) {
+		if (minimumSilence < 0) {
+			throw new IllegalArgumentException("The minimum silence can't be negative.");
+		}
+		this.minimumSilence = minimumSilence;
+	}
+
+	public final double getOnsetThreshold() {
+		return this.onsetThreshold;
+	}
+
+	/**
+	 * An onset is where the energy jumps by this much over its average for
+	 * the last few tens of milliseconds (and isn't silent).
+	 *
+	 * @param onsetThreshold in dB; 9 by default. Lower finds more (and softer) onsets.
+	 */
+	public final void setOnsetThreshold(final double onsetThreshold) {
+		if (onsetThreshold <= 0) {
+			throw new IllegalArgumentException("The onset threshold must be above 0 dB.");
+		}
+		this.onsetThreshold = onsetThreshold;
+	}
+
+	public final double getMinimumOnsetGap() {
+		return this.minimumOnsetGap;
+	}
+
+	/**
+	 * After an onset, no other is marked for this long (so one attack that
+	 * takes a while to build isn't marked several times).
+	 *
+	 * @param minimumOnsetGap in seconds; 0.05 by default.
+	 */
+	public final void setMinimumOnsetGap(final double minimumOnsetGap) {
+		if (minimumOnsetGap < 0) {
+			throw new IllegalArgumentException("The minimum onset gap can't be negative.");
+		}
+		this.minimumOnsetGap = minimumOnsetGap;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * 24-bit samples packed into three bytes each (little-endian), rather than
+ * the four an int[] would take.
+ */
+final class PackedInt24SampleBuffer extends SampleBuffer {
+
+	private final byte[] samples;
+
+	PackedInt24SampleBuffer(int length) {
+		this.samples = new byte[length * 3];
+	}
+
+	private PackedInt24SampleBuffer(byte[] samples) {
+		this.samples = samples;
+	}
+
+	public final int length() {
+		return this.samples.length / 3;
+	}
+
+	public final int get(int index) {
+		int i = index * 3;
+		// The high byte is signed, which sign-extends the result.
+		return (this.samples[i + 2] << 16) | ((this.samples[i + 1] & 0xFF) << 8) | (this.samples[i] & 0xFF);
+	}
+
+	public final long getSizeInBytes() {
+		return this.samples.length;
+	}
+
+	public final void get(int index, int[] dest, int destOffset, int count) {
+		int i = index * 3;
+		for (int n = 0; n < count; n++, i += 3) {
+			dest[destOffset + n] = (this.samples[i + 2] << 16) | ((this.samples[i + 1] & 0xFF) << 8) | (this.samples[i] & 0xFF);
+		}
+	}
+
+	final void put(int index, int[] src, int srcOffset, int count) {
+		int i = index * 3;
+		for (int n = 0; n < count; n++, i += 3) {
+			int sample = src[srcOffset + n];
+			this.samples[i] = (byte) sample;
+			this.samples[i + 1] = (byte) (sample >> 8);
+			this.samples[i + 2] = (byte) (sample >> 16);
+		}
+	}
+
+	final SampleBuffer resize(int length) {
+		if (length > Integer.MAX_VALUE / 3) {
+			// Too long to pack into one byte[] (see SampleBuffer.allocate()), so widen to ints.
+			SampleBuffer widened = new IntSampleBuffer(length);
+			int[] copy = new int[4096];
+			for (int index = 0; index < this.length(); index += copy.length) {
+				int count = Math.min(copy.length, this.length() - index);
+				this.get(index, copy, 0, count);
+				widened.put(index, copy, 0, count);
+			}
+			return widened;
+		}
+		byte[] resized = new byte[length * 3];
+		System.arraycopy(this.samples, 0, resized, 0, Math.min(resized.length, this.samples.length));
+		return new PackedInt24SampleBuffer(resized);
+	}
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A directory of precomputed waveform summaries. When an AudioSample is opened
+ * with a PeakCache, the header metadata and PeakPyramid are read from the cache
+ * if the file hasn't changed (same path, size and modification time), and the
+ * audio itself isn't touched until something asks for the raw samples. On a
+ * miss the file is decoded as usual and the summary is written for next time.
+ *
+ * Each audio file gets one entry, named after a hash of its canonical path.
+ * An entry for a file that has since changed is simply overwritten.
+ *
+ * Example:
+ *
+ * PeakCache cache = new PeakCache(new File(System.getProperty("user.home"), ".haro/peaks"));
+ * AudioSample sample = new AudioSample(file, cache);
+ */
+public final class PeakCache {
+
+	private static final int MAGIC = 0x48504B43; // "HPKC"
+	private static final int VERSION = 2; // 2 added the RMS envelope
+	private static final String EXTENSION = ".peaks";
+
+	private final File directory;
+
+	public PeakCache(final File directory) {
+		this.directory = directory;
+	}
+
+	public final File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Removes the cached summary of a file, if there is one.
+	 *
+	 * @param audioFile
+	 */
+	public final void evict(final File audioFile) {
+		try {
+			this.getEntryFile(audioFile).delete();
+		} catch (IOException e) {
+			// Nothing cached under a path we can't resolve.
+		}
+	}
+
+	/**
+	 * Restores the sample's metadata and summary from the cache.
+	 *
+	 * @param audioFile
+	 * @param sample
+	 * @return true if there was an up-to-date entry for the file.
+	 */
+	final boolean load(final File audioFile, final AudioSample sample) {
+		DataInputStream in = null;
+		try {
+			File entry = this.getEntryFile(audioFile);
+			if (! entry.isFile()) {
+				return false;
+			}
+
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+			if ( (in.readInt() != MAGIC) || (in.readInt() != VERSION) ) {
+				return false;
+			}
+
+			// Is this entry still describing the same file?
+			if ( (! in.readUTF().equals(audioFile.getCanonicalPath()))
+					|| (in.readLong() != audioFile.length())
+					|| (in.readLong() != audioFile.lastModified()) ) {
+				return false;
+			}
+
+			AudioFormat format = new AudioFormat(
+					new AudioFormat.Encoding(in.readUTF()),
+					in.readFloat(), // sample rate
+					in.readInt(), // bits per sample
+					in.readInt(), // channels
+					in.readInt(), // frame size
+					in.readFloat(), // frame rate
+					in.readBoolean()); // big endian
+			long frameLength = in.readLong();
+			int sampleMin = in.readInt();
+			int sampleMax = in.readInt();
+			double biggestSample = in.readDouble();
+			PeakPyramid pyramid = PeakPyramid.read(in, format.getChannels(), frameLength, entry.length());
+
+			sample.restoreSummary(format, frameLength, sampleMin, sampleMax, biggestSample, pyramid);
+			return true;
+
+		} catch (IOException e) {
+			// A truncated or unreadable entry is just a miss.
+			return false;
+		} catch (RuntimeException e) {
+			// So is one that's corrupt (ex. a format Java Sound won't have).
+			return false;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Writes the sample's metadata and summary to the cache. The entry is written
+	 * to a temporary file of its own first so a reader never sees half an entry,
+	 * even when the same file is being stored by another thread (ex. opened in
+	 * two windows at once).
+	 *
+	 * @param audioFile
+	 * @param sample
+	 */
+	final void store(final File audioFile, final AudioSample sample) {
+		DataOutputStream out = null;
+		File temp = null;
+		try {
+			if ( (! this.directory.isDirectory()) && (! this.directory.mkdirs()) ) {
+				return;
+			}
+
+			File entry = this.getEntryFile(audioFile);
+			temp = File.createTempFile(entry.getName(), ".tmp", this.directory);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(audioFile.getCanonicalPath());
+			out.writeLong(audioFile.length());
+			out.writeLong(audioFile.lastModified());
+
+			out.writeUTF(sample.getEncoding());
+			out.writeFloat(sample.getSampleRate());
+			out.writeInt(sample.getBitsPerSample());
+			out.writeInt(sample.getNumberOfChannels());
+			out.writeInt(sample.getFrameSize());
+			out.writeFloat(sample.getFramerate());
+			out.writeBoolean(sample.isBigEndian());
+			out.writeLong(sample.getNumberOfFrames());
+			out.writeInt(sample.getSampleMin());
+			out.writeInt(sample.getSampleMax());
+			out.writeDouble(sample.getBiggestSample());
+			sample.getPeakPyramid().write(out);
+
+			out.close();
+			out = null;
+
+			if (! temp.renameTo(entry)) {
+				// renameTo() won't replace an existing file on Windows.
+				entry.delete();
+				if (! temp.renameTo(entry)) {
+					temp.delete();
+				}
+			}
+		} catch (IOException e) {
+			// The cache is an optimization. Failing to write it shouldn't fail the open.
+			if (temp != null) {
+				close(out);
+				temp.delete();
+			}
+		} finally {
+			close(out);
+		}
+	}
+
+	private final File getEntryFile(final File audioFile) throws IOException {
+		return new File(this.directory, hash(audioFile.getCanonicalPath()) + EXTENSION);
+	}
+
+	private static final String hash(final String path) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; i < digest.length; i++) {
+				hex.append(Integer.toHexString((digest[i] & 0xFF) | 0x100).substring(1));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1.
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			// Every Java platform is required to support UTF-8.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+}
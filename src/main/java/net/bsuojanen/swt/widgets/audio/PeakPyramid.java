@@ -0,0 +1,438 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A mipmap-style summary of an AudioSample: for each channel, the min and max
+ * sample of every bucket of 256, 1024 and 4096 frames, and the sum of the
+ * squares of its samples (for the RMS, or loudness, envelope). It's built while
+ * the audio is decoded, so drawing an overview never has to walk the raw samples;
+ * a renderer picks the level closest to its frames-per-pixel and reads one or
+ * a few buckets per pixel column.
+ *
+ * Because every bucket keeps its true min and max, short transients survive
+ * at every level (which isn't the case when skipping through samples with a
+ * stride).
+ */
+public final class PeakPyramid {
+
+	/**
+	 * log2 of the bucket size of each level, smallest first (256, 1024, 4096).
+	 */
+	private static final int[] LEVEL_SHIFTS = { 8, 10, 12 };
+
+	private final int channels;
+
+	/**
+	 * [level][channel][bucket]
+	 */
+	private int[][][] min;
+	private int[][][] max;
+
+	/**
+	 * [level][channel][bucket] Doubles, since 256 squared 32-bit samples overflow a long.
+	 */
+	private double[][][] sumOfSquares;
+
+	/**
+	 * The number of frames summarized so far.
+	 */
+	private int frames = 0;
+
+	PeakPyramid(int channels, int capacityFrames) {
+		this.channels = channels;
+		this.min = new int[LEVEL_SHIFTS.length][channels][];
+		this.max = new int[LEVEL_SHIFTS.length][channels][];
+		this.sumOfSquares = new double[LEVEL_SHIFTS.length][channels][];
+		for (int level = 0; level < LEVEL_SHIFTS.length; level++) {
+			int buckets = bucketsFor(capacityFrames, LEVEL_SHIFTS[level]);
+			for (int a = 0; a < channels; a++) {
+				this.min[level][a] = new int[buckets];
+				this.max[level][a] = new int[buckets];
+				this.sumOfSquares[level][a] = new double[buckets];
+			}
+		}
+	}
+
+	/**
+	 * The heap used by the buckets.
+	 *
+	 * @return
+	 */
+	public final long getSizeInBytes() {
+		long size = 0;
+		for (int level = 0; level < LEVEL_SHIFTS.length; level++) {
+			for (int a = 0; a < this.channels; a++) {
+				size += 4L * (this.min[level][a].length + this.max[level][a].length) + 8L * this.sumOfSquares[level][a].length;
+			}
+		}
+		return size;
+	}
+
+	public final int getLevelCount() {
+		return LEVEL_SHIFTS.length;
+	}
+
+	/**
+	 * The number of frames summarized by one bucket of the given level.
+	 *
+	 * @param level
+	 * @return
+	 */
+	public final int getBucketSize(int level) {
+		return 1 << LEVEL_SHIFTS[level];
+	}
+
+	/**
+	 * The number of (possibly partially filled) buckets in the given level.
+	 *
+	 * @param level
+	 * @return
+	 */
+	public final int getBucketCount(int level) {
+		return bucketsFor(this.frames, LEVEL_SHIFTS[level]);
+	}
+
+	public final int getMin(int level, int channel, int bucket) {
+		return this.min[level][channel][bucket];
+	}
+
+	public final int getMax(int level, int channel, int bucket) {
+		return this.max[level][channel][bucket];
+	}
+
+	/**
+	 * The sum of the squares of the bucket's samples. Divide the sum over one or
+	 * more buckets by the getFramesIn() of each to get the mean square, and take
+	 * the square root of that for the RMS.
+	 *
+	 * @param level
+	 * @param channel
+	 * @param bucket
+	 * @return
+	 */
+	public final double getSumOfSquares(int level, int channel, int bucket) {
+		return this.sumOfSquares[level][channel][bucket];
+	}
+
+	/**
+	 * The number of frames summarized by a bucket. This is the bucket size for
+	 * every bucket but (possibly) the last.
+	 *
+	 * @param level
+	 * @param bucket
+	 * @return
+	 */
+	public final int getFramesIn(int level, int bucket) {
+		long first = (long) bucket << LEVEL_SHIFTS[level];
+		return (int) Math.max(0, Math.min(this.getBucketSize(level), this.frames - first));
+	}
+
+	/**
+	 * The root mean square of the bucket's samples.
+	 *
+	 * @param level
+	 * @param channel
+	 * @param bucket
+	 * @return
+	 */
+	public final double getRms(int level, int channel, int bucket) {
+		int count = this.getFramesIn(level, bucket);
+		return (count == 0) ? 0 : Math.sqrt(this.sumOfSquares[level][channel][bucket] / count);
+	}
+
+	/**
+	 * The number of frames summarized so far.
+	 *
+	 * @return
+	 */
+	public final int getNumberOfFrames() {
+		return this.frames;
+	}
+
+	/**
+	 * Picks the coarsest level whose buckets are no wider than a pixel column,
+	 * so a column spans one to a few buckets.
+	 *
+	 * @param framesPerPixel
+	 * @return the level, or -1 if columns are narrower than the smallest bucket
+	 * (i.e. draw from the raw samples).
+	 */
+	public final int selectLevel(double framesPerPixel) {
+		int selected = -1;
+		for (int level = 0; level < LEVEL_SHIFTS.length; level++) {
+			if (this.getBucketSize(level) <= framesPerPixel) {
+				selected = level;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Summarizes frames [fromFrame, toFrame) of the decoded samples. Buckets that
+	 * were partially filled by a previous call are merged with, not overwritten.
+	 * 
+	 * Calls for ranges that don't share a 4096 frame bucket may run concurrently,
+	 * as long as the pyramid already has the capacity for them.
+	 *
+	 * @param samples [channel][index], holding frame fromFrame at index sampleOffset
+	 * @param sampleOffset
+	 * @param fromFrame
+	 * @param toFrame
+	 */
+	final void update(int[][] samples, int sampleOffset, int fromFrame, int toFrame) {
+		if (toFrame <= fromFrame) {
+			return;
+		}
+		this.ensureCapacity(toFrame);
+
+		// Level 0 straight from the samples.
+		final int shift = LEVEL_SHIFTS[0];
+		for (int a = 0; a < this.channels; a++) {
+			int[] channelSamples = samples[a];
+			int offset = sampleOffset - fromFrame;
+			int[] levelMin = this.min[0][a];
+			int[] levelMax = this.max[0][a];
+			double[] levelSum = this.sumOfSquares[0][a];
+
+			int t = fromFrame;
+			while (t < toFrame) {
+				int bucket = t >> shift;
+				int bucketEnd = Math.min(toFrame, (bucket + 1) << shift);
+
+				int lo, hi;
+				double sum;
+				if (t == (bucket << shift)) {
+					// Fresh bucket.
+					lo = channelSamples[t + offset];
+					hi = lo;
+					sum = 0;
+				} else {
+					lo = levelMin[bucket];
+					hi = levelMax[bucket];
+					sum = levelSum[bucket];
+				}
+
+				for (; t < bucketEnd; t++) {
+					int sample = channelSamples[t + offset];
+					if (sample < lo) {
+						lo = sample;
+					}
+					if (sample > hi) {
+						hi = sample;
+					}
+					sum += (double) sample * sample;
+				}
+				levelMin[bucket] = lo;
+				levelMax[bucket] = hi;
+				levelSum[bucket] = sum;
+			}
+		}
+
+		this.updateUpperLevels(fromFrame, toFrame);
+
+		// Chunks may be summarized concurrently (and out of order) by a parallel decode.
+		synchronized (this) {
+			if (toFrame > this.frames) {
+				this.frames = toFrame;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds, for the frames [fromFrame, toFrame), each level above the first
+	 * from the level below it.
+	 *
+	 * @param fromFrame
+	 * @param toFrame
+	 */
+	private final void updateUpperLevels(int fromFrame, int toFrame) {
+		for (int level = 1; level < LEVEL_SHIFTS.length; level++) {
+			int ratio = 1 << (LEVEL_SHIFTS[level] - LEVEL_SHIFTS[level - 1]);
+			int firstBucket = fromFrame >> LEVEL_SHIFTS[level];
+			int lastBucket = (toFrame - 1) >> LEVEL_SHIFTS[level];
+			int childCount = bucketsFor(toFrame, LEVEL_SHIFTS[level - 1]);
+
+			for (int a = 0; a < this.channels; a++) {
+				int[] childMin = this.min[level - 1][a];
+				int[] childMax = this.max[level - 1][a];
+				double[] childSum = this.sumOfSquares[level - 1][a];
+
+				for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+					int child = bucket * ratio;
+					int childEnd = Math.min(childCount, child + ratio);
+					int lo = childMin[child];
+					int hi = childMax[child];
+					double sum = childSum[child];
+					for (child++; child < childEnd; child++) {
+						if (childMin[child] < lo) {
+							lo = childMin[child];
+						}
+						if (childMax[child] > hi) {
+							hi = childMax[child];
+						}
+						sum += childSum[child];
+					}
+					this.min[level][a][bucket] = lo;
+					this.max[level][a][bucket] = hi;
+					this.sumOfSquares[level][a][bucket] = sum;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the pyramid in a compact binary form. Only the first level is
+	 * written (the others are cheap to rebuild), with the min/max as 16-bit
+	 * values when the audio fits.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	final void write(DataOutputStream out) throws IOException {
+		int buckets = this.getBucketCount(0);
+		int valueBytes = 2;
+		for (int a = 0; a < this.channels; a++) {
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				if ( (this.min[0][a][bucket] < Short.MIN_VALUE) || (this.max[0][a][bucket] > Short.MAX_VALUE) ) {
+					valueBytes = 4;
+				}
+			}
+		}
+
+		out.writeInt(this.channels);
+		out.writeInt(this.frames);
+		out.writeByte(valueBytes);
+
+		ByteBuffer buffer = ByteBuffer.allocate(buckets * 8);
+		for (int a = 0; a < this.channels; a++) {
+			writeValues(out, buffer, this.min[0][a], buckets, valueBytes);
+			writeValues(out, buffer, this.max[0][a], buckets, valueBytes);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(this.sumOfSquares[0][a], 0, buckets);
+			out.write(buffer.array(), 0, buckets * 8);
+		}
+	}
+
+	/**
+	 * Reads a pyramid written by write(). Nothing is allocated until the data
+	 * is known to describe the expected audio and to fit in what's left of the
+	 * input, so a corrupt entry can't ask for an absurd amount of memory.
+	 *
+	 * @param in
+	 * @param expectedChannels
+	 * @param expectedFrames
+	 * @param available at most this many bytes are left to read
+	 * @return
+	 * @throws IOException if the data is corrupt, or doesn't match.
+	 */
+	static final PeakPyramid read(DataInputStream in, int expectedChannels, long expectedFrames, long available) throws IOException {
+		int channels = in.readInt();
+		int frames = in.readInt();
+		int valueBytes = in.readByte();
+		if ( (channels != expectedChannels) || (channels < 1) || (frames != expectedFrames) || (frames < 0)
+				|| ((valueBytes != 2) && (valueBytes != 4)) ) {
+			throw new IOException("Corrupt peak data.");
+		}
+		int buckets = bucketsFor(frames, LEVEL_SHIFTS[0]);
+		// Every channel is at least a bucket's worth; an entry for an empty file isn't worth trusting.
+		if ((long) channels * Math.max(1, buckets) * (2L * valueBytes + 8) > available) {
+			throw new IOException("Truncated peak data.");
+		}
+
+		PeakPyramid pyramid = new PeakPyramid(channels, frames);
+		ByteBuffer buffer = ByteBuffer.allocate(buckets * 8);
+		for (int a = 0; a < channels; a++) {
+			readValues(in, buffer, pyramid.min[0][a], buckets, valueBytes);
+			readValues(in, buffer, pyramid.max[0][a], buckets, valueBytes);
+			buffer.clear();
+			in.readFully(buffer.array(), 0, buckets * 8);
+			buffer.asDoubleBuffer().get(pyramid.sumOfSquares[0][a], 0, buckets);
+		}
+		pyramid.frames = frames;
+		pyramid.updateUpperLevels(0, frames);
+		return pyramid;
+	}
+
+	private static final void writeValues(DataOutputStream out, ByteBuffer buffer, int[] values, int count, int valueBytes) throws IOException {
+		buffer.clear();
+		if (valueBytes == 2) {
+			for (int i = 0; i < count; i++) {
+				buffer.putShort((short) values[i]);
+			}
+		} else {
+			buffer.asIntBuffer().put(values, 0, count);
+		}
+		out.write(buffer.array(), 0, count * valueBytes);
+	}
+
+	private static final void readValues(DataInputStream in, ByteBuffer buffer, int[] values, int count, int valueBytes) throws IOException {
+		buffer.clear();
+		in.readFully(buffer.array(), 0, count * valueBytes);
+		if (valueBytes == 2) {
+			for (int i = 0; i < count; i++) {
+				values[i] = buffer.getShort();
+			}
+		} else {
+			buffer.asIntBuffer().get(values, 0, count);
+		}
+	}
+
+	/**
+	 * Resizes every level to fit the given number of frames. Used when the
+	 * stream's length wasn't known up front, and to trim once it's decoded.
+	 *
+	 * @param capacityFrames
+	 */
+	final void setCapacity(int capacityFrames) {
+		for (int level = 0; level < LEVEL_SHIFTS.length; level++) {
+			int buckets = bucketsFor(capacityFrames, LEVEL_SHIFTS[level]);
+			for (int a = 0; a < this.channels; a++) {
+				this.min[level][a] = resize(this.min[level][a], buckets);
+				this.max[level][a] = resize(this.max[level][a], buckets);
+				this.sumOfSquares[level][a] = resize(this.sumOfSquares[level][a], buckets);
+			}
+		}
+	}
+
+	private final void ensureCapacity(int capacityFrames) {
+		if (bucketsFor(capacityFrames, LEVEL_SHIFTS[0]) > this.min[0][0].length) {
+			this.setCapacity(capacityFrames);
+		}
+	}
+
+	private static final int[] resize(int[] array, int length) {
+		if (array.length == length) {
+			return array;
+		}
+		int[] resized = new int[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(length, array.length));
+		return resized;
+	}
+
+	private static final double[] resize(double[] array, int length) {
+		if (array.length == length) {
+			return array;
+		}
+		double[] resized = new double[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(length, array.length));
+		return resized;
+	}
+
+	private static final int bucketsFor(int frames, int shift) {
+		return (int) ((frames + (1L << shift) - 1) >> shift);
+	}
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.Arrays;
+
+/**
+ * Answers min/max/RMS queries over any range of a sample in O(log n).
+ *
+ * The index is a segment tree of the min and max of the PeakPyramid's
+ * coarsest buckets, plus a running (prefix) sum of their sums of squares.
+ * A range is split into the whole coarse buckets in its middle (answered by
+ * the tree and the prefix sums), up to a few of the pyramid's smallest
+ * buckets either side of those, and fewer than a smallest bucket's worth of
+ * raw samples at each end. So however long the range, a query reads a few
+ * hundred values at most.
+ *
+ * It's extended as the decoded prefix of the sample grows (see
+ * AudioSample.chunkDecoded()), by whole coarse buckets.
+ */
+final class RangeIndex {
+
+	/**
+	 * Below this many coarse buckets, their sums of squares are added up
+	 * directly rather than subtracting two (much larger) running totals,
+	 * which would lose the precision of a quiet range late in a loud file.
+	 */
+	private static final int DIRECT_SUM_BUCKETS = 32;
+
+	private final AudioSample sample;
+	private final PeakPyramid pyramid;
+	private final int channels;
+	private final int level;
+	private final int shift;
+	private final int fineShift;
+
+	/**
+	 * [channel][node]; node 1 is the root, and the leaves (one per coarse
+	 * bucket) start at size.
+	 */
+	private int[][] min;
+	private int[][] max;
+	private int size = 0;
+
+	/**
+	 * [channel][bucket] the sum of squares of the coarse buckets before bucket.
+	 */
+	private double[][] prefixSums;
+
+	/**
+	 * The coarse buckets indexed so far (all of them whole).
+	 */
+	private int buckets = 0;
+
+	RangeIndex(AudioSample sample, PeakPyramid pyramid) {
+		this.sample = sample;
+		this.pyramid = pyramid;
+		this.channels = sample.getNumberOfChannels();
+		this.level = pyramid.getLevelCount() - 1;
+		this.shift = Integer.numberOfTrailingZeros(pyramid.getBucketSize(this.level));
+		this.fineShift = Integer.numberOfTrailingZeros(pyramid.getBucketSize(0));
+		this.min = new int[this.channels][0];
+		this.max = new int[this.channels][0];
+		this.prefixSums = new double[this.channels][1];
+	}
+
+	/**
+	 * Indexes the coarse buckets that are wholly inside the first frames.
+	 *
+	 * @param frames the number of frames decoded and summarized, from the start.
+	 */
+	final synchronized void extend(int frames) {
+		int buckets = frames >> this.shift;
+		if (buckets <= this.buckets) {
+			return;
+		}
+		this.ensureSize(buckets);
+		int first = this.buckets;
+		for (int a = 0; a < this.channels; a++) {
+			int[] min = this.min[a];
+			int[] max = this.max[a];
+			double[] prefix = this.prefixSums[a];
+			for (int bucket = first; bucket < buckets; bucket++) {
+				min[this.size + bucket] = this.pyramid.getMin(this.level, a, bucket);
+				max[this.size + bucket] = this.pyramid.getMax(this.level, a, bucket);
+				prefix[bucket + 1] = prefix[bucket] + this.pyramid.getSumOfSquares(this.level, a, bucket);
+			}
+			// Then their ancestors, a row at a time.
+			for (int lo = (this.size + first) >> 1, hi = (this.size + buckets - 1) >> 1; lo >= 1; lo >>= 1, hi >>= 1) {
+				for (int node = lo; node <= hi; node++) {
+					min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+					max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+				}
+			}
+		}
+		this.buckets = buckets;
+	}
+
+	/**
+	 * Grows the tree (by doubling) to fit at least the given number of leaves.
+	 */
+	private final void ensureSize(int buckets) {
+		if (buckets <= this.size) {
+			return;
+		}
+		int size = Math.max(1, this.size);
+		while (size < buckets) {
+			size <<= 1;
+		}
+		for (int a = 0; a < this.channels; a++) {
+			int[] min = new int[2 * size];
+			int[] max = new int[2 * size];
+			// Empty leaves never win a min or a max.
+			Arrays.fill(min, Integer.MAX_VALUE);
+			Arrays.fill(max, Integer.MIN_VALUE);
+			System.arraycopy(this.min[a], this.size, min, size, this.buckets);
+			System.arraycopy(this.max[a], this.size, max, size, this.buckets);
+			for (int node = size - 1; node >= 1; node--) {
+				min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+				max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+			}
+			this.min[a] = min;
+			this.max[a] = max;
+			double[] prefix = new double[size + 1];
+			System.arraycopy(this.prefixSums[a], 0, prefix, 0, this.buckets + 1);
+			this.prefixSums[a] = prefix;
+		}
+		this.size = size;
+	}
+
+	/**
+	 * The statistics of frames [from, to), which must have been decoded. Only
+	 * the tree is read under the lock; the ends may read the raw samples (and,
+	 * for a sample opened from a PeakCache, that may decode it).
+	 *
+	 * @param channel
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	final RangeStatistics query(int channel, int from, int to) {
+		Accumulator total = new Accumulator();
+		if (to <= from) {
+			return total.toStatistics(0);
+		}
+		int fine = 1 << this.fineShift;
+		int coarse = 1 << this.shift;
+		// Inward to the smallest buckets, then to the coarse ones (as far as they're indexed).
+		int fineFrom = roundUp(from, fine);
+		int fineTo = Math.max(fineFrom, to & -fine);
+		int coarseFrom = roundUp(fineFrom, coarse);
+		int coarseTo = Math.min(fineTo & -coarse, this.getIndexedFrames());
+
+		if (fineFrom >= fineTo) {
+			this.addSamples(total, channel, from, to);
+		} else {
+			this.addSamples(total, channel, from, fineFrom);
+			this.addSamples(total, channel, fineTo, to);
+			if (coarseFrom >= coarseTo) {
+				this.addFineBuckets(total, channel, fineFrom, fineTo);
+			} else {
+				this.addFineBuckets(total, channel, fineFrom, coarseFrom);
+				this.addFineBuckets(total, channel, coarseTo, fineTo);
+				this.addCoarseBuckets(total, channel, coarseFrom >> this.shift, coarseTo >> this.shift);
+			}
+		}
+		return total.toStatistics(to - from);
+	}
+
+	private final synchronized int getIndexedFrames() {
+		return this.buckets << this.shift;
+	}
+
+	private final void addSamples(Accumulator total, int channel, int from, int to) {
+		if (to <= from) {
+			return;
+		}
+		SampleBuffer samples = this.sample.getAudio(channel);
+		for (int t = from; t < to; t++) {
+			int value = samples.get(t);
+			total.add(value, value, (double) value * value);
+		}
+	}
+
+	private final void addFineBuckets(Accumulator total, int channel, int from, int to) {
+		for (int bucket = from >> this.fineShift, last = to >> this.fineShift; bucket < last; bucket++) {
+			total.add(this.pyramid.getMin(0, channel, bucket), this.pyramid.getMax(0, channel, bucket),
+					this.pyramid.getSumOfSquares(0, channel, bucket));
+		}
+	}
+
+	/**
+	 * The coarse buckets [from, to): min and max from the tree, the sum of
+	 * squares from the running totals.
+	 */
+	private final synchronized void addCoarseBuckets(Accumulator total, int channel, int from, int to) {
+		int[] min = this.min[channel];
+		int[] max = this.max[channel];
+		int lo = Integer.MAX_VALUE;
+		int hi = Integer.MIN_VALUE;
+		for (int l = from + this.size, r = to + this.size; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1) {
+				lo = Math.min(lo, min[l]);
+				hi = Math.max(hi, max[l]);
+				l++;
+			}
+			if ((r & 1) == 1) {
+				r--;
+				lo = Math.min(lo, min[r]);
+				hi = Math.max(hi, max[r]);
+			}
+		}
+
+		double sum;
+		if (to - from <= DIRECT_SUM_BUCKETS) {
+			sum = 0;
+			for (int bucket = from; bucket < to; bucket++) {
+				sum += this.pyramid.getSumOfSquares(this.level, channel, bucket);
+			}
+		} else {
+			sum = this.prefixSums[channel][to] - this.prefixSums[channel][from];
+		}
+		total.add(lo, hi, sum);
+	}
+
+	private static final int roundUp(int value, int multiple) {
+		return (int) Math.min(Integer.MAX_VALUE, ((long) value + multiple - 1) & -multiple);
+	}
+
+	private static final class Accumulator {
+
+		private int min = Integer.MAX_VALUE;
+		private int max = Integer.MIN_VALUE;
+		private double sumOfSquares = 0;
+
+		private final void add(int min, int max, double sumOfSquares) {
+			if (min < this.min) {
+				this.min = min;
+			}
+			if (max > this.max) {
+				this.max = max;
+			}
+			this.sumOfSquares += sumOfSquares;
+		}
+
+		private final RangeStatistics toStatistics(long frames) {
+			if (frames == 0) {
+				return new RangeStatistics(0, 0, 0, 0);
+			}
+			return new RangeStatistics(frames, this.min, this.max, this.sumOfSquares);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * The min, max, peak and RMS of one channel over a range of frames (ex. a
+ * selection). See AudioSample.getRangeStatistics().
+ */
+public final class RangeStatistics {
+
+	private final long frames;
+	private final int min;
+	private final int max;
+	private final double sumOfSquares;
+
+	RangeStatistics(long frames, int min, int max, double sumOfSquares) {
+		this.frames = frames;
+		this.min = min;
+		this.max = max;
+		this.sumOfSquares = sumOfSquares;
+	}
+
+	/**
+	 * The number of frames in the range (which may be fewer than asked for if
+	 * it reached past what's decoded).
+	 *
+	 * @return
+	 */
+	public final long getFrameCount() {
+		return this.frames;
+	}
+
+	public final int getMin() {
+		return this.min;
+	}
+
+	public final int getMax() {
+		return this.max;
+	}
+
+	/**
+	 * The largest magnitude, positive or negative.
+	 *
+	 * @return
+	 */
+	public final double getPeak() {
+		return Math.max(-(double) this.min, this.max);
+	}
+
+	public final double getSumOfSquares() {
+		return this.sumOfSquares;
+	}
+
+	public final double getRms() {
+		return (this.frames == 0) ? 0 : Math.sqrt(this.sumOfSquares / this.frames);
+	}
+
+	public String toString() {
+		return "frames=" + this.frames + " min=" + this.min + " max=" + this.max + " rms=" + this.getRms();
+	}
+}
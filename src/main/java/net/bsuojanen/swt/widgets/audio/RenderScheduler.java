@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Renders a ChannelCanvas's image on a background thread (with a
+ * WaveformRasterizer), so the UI thread only ever copies pixels.
+ *
+ * Every request supersedes the ones before it. Only the newest waiting
+ * request is kept, and at most one is rendered at a time per canvas, so a
+ * burst of them (ex. while the window is being resized, or the wheel zooms)
+ * renders the first and the last and nothing in between. A request that's
+ * been superseded by the time it's rendered is dropped rather than posted;
+ * the one that's still current is handed back to the canvas through
+ * Display.asyncExec().
+ */
+final class RenderScheduler {
+
+	private static ExecutorService executor;
+
+	private final ChannelCanvas canvas;
+	private final Display display;
+
+	/**
+	 * Bumped by every request (and by cancel()); a rendering is only posted,
+	 * and only used, if it's still the current generation.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicReference<Request> pending = new AtomicReference<Request>();
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	private final Runnable drainer = new Runnable() {
+		public void run() {
+			try {
+				drain();
+			} finally {
+				running.set(false);
+				// A request that came in as we were finishing.
+				if (pending.get() != null) {
+					start();
+				}
+			}
+		}
+	};
+
+	RenderScheduler(ChannelCanvas canvas) {
+		this.canvas = canvas;
+		this.display = canvas.getDisplay();
+	}
+
+	private static final synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Waveform renderer"));
+		}
+		return executor;
+	}
+
+	/**
+	 * Asks for one channel's frames [start, end) to be rendered, superseding
+	 * any earlier request. Called on the UI thread.
+	 *
+	 * @param rasterizer configured for this request alone (it's used on another thread)
+	 * @param sample
+	 * @param channel
+	 * @param start
+	 * @param end
+	 */
+	final void schedule(WaveformRasterizer rasterizer, AudioSample sample, int channel, long start, long end) {
+		long generation = this.generation.incrementAndGet();
+		this.pending.set(new Request(generation, rasterizer, sample, channel, start, end));
+		this.start();
+	}
+
+	/**
+	 * Drops whatever's waiting or being rendered (ex. the canvas is being disposed).
+	 */
+	final void cancel() {
+		this.generation.incrementAndGet();
+		this.pending.set(null);
+	}
+
+	private final void start() {
+		if (this.running.compareAndSet(false, true)) {
+			getExecutor().execute(this.drainer);
+		}
+	}
+
+	private final void drain() {
+		Request request;
+		while ((request = this.pending.getAndSet(null)) != null) {
+			if (request.generation != this.generation.get()) {
+				continue;
+			}
+			long start = System.nanoTime();
+			ImageData data = request.rasterizer.render(request.sample, request.channel, request.start, request.end);
+			if (request.generation == this.generation.get()) {
+				this.post(request.generation, data, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private final void post(final long generation, final ImageData data, final long renderNanos) {
+		if (this.display.isDisposed()) {
+			return;
+		}
+		this.display.asyncExec(new Runnable() {
+			public void run() {
+				// Checked again, in case something newer was asked for while this waited.
+				if ( (! canvas.isDisposed()) && (generation == RenderScheduler.this.generation.get()) ) {
+					canvas.imageRendered(data, renderNanos);
+				}
+			}
+		});
+	}
+
+	private static final class Request {
+
+		private final long generation;
+		private final WaveformRasterizer rasterizer;
+		private final AudioSample sample;
+		private final int channel;
+		private final long start;
+		private final long end;
+
+		private Request(long generation, WaveformRasterizer rasterizer, AudioSample sample, int channel, long start, long end) {
+			this.generation = generation;
+			this.rasterizer = rasterizer;
+			this.sample = sample;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * The samples of one channel, stored at their natural size. 8-bit audio is
+ * kept in a byte[], 16-bit in a short[] and 24-bit packed three bytes per
+ * sample, so a file costs about what it does on disk rather than four bytes
+ * per sample. Memory-mapped WAVE files get a view that reads straight from
+ * the mapping and holds nothing on the heap.
+ *
+ * Every implementation hands samples out as ints, centered on zero.
+ */
+public abstract class SampleBuffer {
+
+	/**
+	 * Allocates a heap buffer suited to the bit depth.
+	 * 
+	 * @param bitsPerSample
+	 * @param length the number of samples
+	 * @return
+	 */
+	static final SampleBuffer allocate(int bitsPerSample, int length) {
+		if (bitsPerSample <= 8) {
+			return new ByteSampleBuffer(length);
+		} else if (bitsPerSample <= 16) {
+			return new ShortSampleBuffer(length);
+		} else if ( (bitsPerSample <= 24) && (length <= Integer.MAX_VALUE / 3) ) {
+			return new PackedInt24SampleBuffer(length);
+		}
+		return new IntSampleBuffer(length);
+	}
+
+	/**
+	 * The number of samples.
+	 * 
+	 * @return
+	 */
+	public abstract int length();
+
+	public abstract int get(int index);
+
+	/**
+	 * The number of heap bytes holding the samples (zero for a memory-mapped view).
+	 * 
+	 * @return
+	 */
+	public abstract long getSizeInBytes();
+
+	/**
+	 * Copies a run of samples into an int array.
+	 * 
+	 * @param index the first sample to copy
+	 * @param dest
+	 * @param destOffset
+	 * @param count
+	 */
+	public void get(int index, int[] dest, int destOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			dest[destOffset + i] = this.get(index + i);
+		}
+	}
+
+	/**
+	 * Copies every sample into a new int array. This widens the samples to
+	 * four bytes each, so only do it when you really need an int[].
+	 * 
+	 * @return
+	 */
+	public final int[] toArray() {
+		int[] samples = new int[this.length()];
+		this.get(0, samples, 0, samples.length);
+		return samples;
+	}
+
+	/**
+	 * Stores a run of decoded samples.
+	 * 
+	 * @param index where to store the first sample
+	 * @param src
+	 * @param srcOffset
+	 * @param count
+	 */
+	abstract void put(int index, int[] src, int srcOffset, int count);
+
+	/**
+	 * Returns a buffer of the given length holding this buffer's samples (as
+	 * many as fit). Used when the length of a stream wasn't known up front.
+	 * 
+	 * @param length
+	 * @return
+	 */
+	abstract SampleBuffer resize(int length);
+}
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps decoded AudioSamples in memory so going back to a file doesn't decode
+ * it again. Files are identified by path, size and modification time, so a
+ * file that changes on disk is simply a new entry.
+ *
+ * The most recently used samples are held strongly, up to a budget in bytes
+ * (see AudioSample.getSizeInBytes()); past that the least recently used are
+ * demoted to soft references, which the garbage collector clears when the
+ * heap runs short. A demoted sample that's asked for again, and hasn't been
+ * collected, is promoted back.
+ *
+ * When several threads ask for the same file at once, one decodes it and the
+ * rest wait for its result.
+ *
+ * Example:
+ *
+ * options.setSampleCache(SampleCache.getDefault());
+ * waveform.load(file, options, listener); // decoded once, then shared
+ */
+public final class SampleCache {
+
+	private static SampleCache defaultCache;
+
+	private final long maximumBytes;
+	private long bytes = 0;
+
+	/**
+	 * The strongly held samples, least recently used first.
+	 */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	/**
+	 * Samples that didn't fit in the budget, until the collector takes them.
+	 */
+	private final HashMap<Key, SoftEntry> softEntries = new HashMap<Key, SoftEntry>();
+	private final ReferenceQueue<AudioSample> collected = new ReferenceQueue<AudioSample>();
+
+	/**
+	 * Decodes in progress.
+	 */
+	private final HashMap<Key, FutureTask<AudioSample>> pending = new HashMap<Key, FutureTask<AudioSample>>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param maximumBytes the most heap the strongly held samples may use.
+	 */
+	public SampleCache(final long maximumBytes) {
+		if (maximumBytes < 0) {
+			throw new IllegalArgumentException("The budget can't be negative.");
+		}
+		this.maximumBytes = maximumBytes;
+	}
+
+	/**
+	 * A process-wide cache with a budget of a quarter of the maximum heap.
+	 *
+	 * @return
+	 */
+	public static final synchronized SampleCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new SampleCache(Runtime.getRuntime().maxMemory() / 4);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Returns the file's sample, opening it (with the given options) if it isn't cached.
+	 *
+	 * @param file
+	 * @param options
+	 * @return
+	 * @throws Exception as new AudioSample(file, options) would.
+	 */
+	public final AudioSample get(final File file, final AudioSampleOptions options) throws Exception {
+		return this.get(file, options, null);
+	}
+
+	/**
+	 * As get(file, options), with a listener for AudioSampleLoader. The
+	 * listener only hears about the load if this thread is the one decoding.
+	 */
+	final AudioSample get(final File file, final AudioSampleOptions options, final AudioSampleLoadListener listener) throws Exception {
+		final Key key = new Key(file);
+		while (true) {
+			FutureTask<AudioSample> task;
+			boolean decodeHere = false;
+			synchronized (this) {
+				AudioSample cached = this.lookUp(key);
+				if (cached != null) {
+					this.hits++;
+					return cached;
+				}
+				task = this.pending.get(key);
+				if (task != null) {
+					this.hits++;
+				} else {
+					this.misses++;
+					task = new FutureTask<AudioSample>(new Callable<AudioSample>() {
+						public AudioSample call() throws Exception {
+							AudioSample sample = new AudioSample(file, options, listener);
+							sample.open();
+							sample.ensureSamplesAvailable();
+							// Before it stops being pending, so no one can miss it in between.
+							put(key, sample);
+							return sample;
+						}
+					});
+					this.pending.put(key, task);
+					decodeHere = true;
+				}
+			}
+
+			if (decodeHere) {
+				try {
+					task.run();
+				} finally {
+					synchronized (this) {
+						this.pending.remove(key);
+					}
+				}
+			}
+
+			try {
+				return task.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if ( (! decodeHere) && isCancellation(cause) ) {
+					// Whoever was decoding gave up (ex. their load was canceled); we still want it.
+					continue;
+				}
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private static final boolean isCancellation(Throwable e) {
+		return (e instanceof CancellationException) || (e instanceof InterruptedIOException);
+	}
+
+	/**
+	 * Must hold the lock.
+	 */
+	private final AudioSample lookUp(Key key) {
+		this.expungeCollected();
+		Entry entry = this.entries.get(key);
+		if (entry != null) {
+			// Samples opened from a PeakCache grow when their audio is first read.
+			long size = entry.sample.getSizeInBytes();
+			this.bytes += size - entry.size;
+			entry.size = size;
+			this.trim();
+			return entry.sample;
+		}
+		SoftEntry soft = this.softEntries.remove(key);
+		if (soft != null) {
+			AudioSample sample = soft.get();
+			if (sample != null) {
+				this.insert(key, sample);
+				return sample;
+			}
+		}
+		return null;
+	}
+
+	private final synchronized void put(Key key, AudioSample sample) {
+		this.softEntries.remove(key);
+		Entry old = this.entries.remove(key);
+		if (old != null) {
+			this.bytes -= old.size;
+		}
+		this.insert(key, sample);
+	}
+
+	/**
+	 * Must hold the lock.
+	 */
+	private final void insert(Key key, AudioSample sample) {
+		Entry entry = new Entry(sample);
+		this.entries.put(key, entry);
+		this.bytes += entry.size;
+		this.trim();
+	}
+
+	/**
+	 * Demotes the least recently used samples until the rest fit the budget.
+	 * The most recent one always stays, even if it's bigger than the budget
+	 * on its own. Must hold the lock.
+	 */
+	private final void trim() {
+		Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+		while ( (this.bytes > this.maximumBytes) && (this.entries.size() > 1) ) {
+			Map.Entry<Key, Entry> eldest = iterator.next();
+			iterator.remove();
+			this.bytes -= eldest.getValue().size;
+			this.softEntries.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue().sample, this.collected));
+		}
+	}
+
+	/**
+	 * Drops the soft entries whose samples have been collected. Must hold the lock.
+	 */
+	private final void expungeCollected() {
+		SoftEntry soft;
+		while ( (soft = (SoftEntry) this.collected.poll()) != null ) {
+			if (this.softEntries.get(soft.key) == soft) {
+				this.softEntries.remove(soft.key);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the file's sample, if it's cached (a decode in progress isn't affected).
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public final synchronized void evict(final File file) throws IOException {
+		Key key = new Key(file);
+		Entry entry = this.entries.remove(key);
+		if (entry != null) {
+			this.bytes -= entry.size;
+		}
+		this.softEntries.remove(key);
+	}
+
+	/**
+	 * Forgets every sample.
+	 */
+	public final synchronized void clear() {
+		this.entries.clear();
+		this.softEntries.clear();
+		this.bytes = 0;
+	}
+
+	public final long getMaximumBytes() {
+		return this.maximumBytes;
+	}
+
+	/**
+	 * @return the size of the strongly held samples.
+	 */
+	public final synchronized long getSizeInBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return the number of samples held, strongly or softly.
+	 */
+	public final synchronized int size() {
+		this.expungeCollected();
+		return this.entries.size() + this.softEntries.size();
+	}
+
+	/**
+	 * @return how many get()s were answered from the cache (or a decode already in progress).
+	 */
+	public final synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return how many get()s had to decode.
+	 */
+	public final synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * A file as it was when it was opened.
+	 */
+	private static final class Key {
+
+		private final String path;
+		private final long length;
+		private final long lastModified;
+
+		private Key(File file) throws IOException {
+			this.path = file.getCanonicalPath();
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+		}
+
+		public boolean equals(Object o) {
+			if (! (o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.path.equals(other.path) && (this.length == other.length) && (this.lastModified == other.lastModified);
+		}
+
+		public int hashCode() {
+			return 31 * (31 * this.path.hashCode() + (int) (this.length ^ (this.length >>> 32)))
+					+ (int) (this.lastModified ^ (this.lastModified >>> 32));
+		}
+	}
+
+	private static final class Entry {
+
+		private final AudioSample sample;
+		private long size;
+
+		private Entry(AudioSample sample) {
+			this.sample = sample;
+			this.size = sample.getSizeInBytes();
+		}
+	}
+
+	private static final class SoftEntry extends SoftReference<AudioSample> {
+
+		private final Key key;
+
+		private SoftEntry(Key key, AudioSample sample, ReferenceQueue<AudioSample> queue) {
+			super(sample, queue);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * The short-time Fourier transform of one channel of a sample, computed on
+ * background threads a tile at a time.
+ *
+ * A tile is TILE_COLUMNS spectra side by side, each one an FFT of a Hann
+ * window of the audio, hop frames after the last. The hop is a power of two
+ * (the zoom level is its log2), so a view asks for the level closest to its
+ * frames per pixel and stretches the tiles by less than a factor of two. When
+ * the hop is wider than the window the frames in between are skipped, so a
+ * tile costs the same to compute at any zoom.
+ *
+ * Each tile is an 8-bit ImageData (time across, frequency up, loudness as
+ * color), ready to be turned into an Image on the UI thread. The most
+ * recently used tiles are kept, so scrolling back and forth or zooming
+ * within a level computes nothing new.
+ */
+public final class Spectrogram {
+
+	/**
+	 * The spectra per tile.
+	 */
+	public static final int TILE_COLUMNS = 256;
+
+	/**
+	 * The quietest level shown, in dB below full scale; anything quieter is black.
+	 */
+	public static final double FLOOR_DB = -100;
+
+	private static final int MAXIMUM_TILES = 96;
+
+	private static ExecutorService executor;
+
+	private final AudioSample sample;
+	private final int channel;
+	private final int fftSize;
+	private final double[] window;
+	private final PaletteData palette = createPalette();
+
+	/**
+	 * [level, index] -> tile, least recently used first.
+	 */
+	private final LinkedHashMap<Long, ImageData> tiles = new LinkedHashMap<Long, ImageData>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Long, ImageData> eldest) {
+			return this.size() > MAXIMUM_TILES;
+		}
+	};
+
+	/**
+	 * Tiles queued or being computed, and the ones the view still wants. A
+	 * queued tile that's no longer wanted (ex. scrolled past) is dropped when
+	 * its turn comes.
+	 */
+	private final Set<Long> pending = new HashSet<Long>();
+	private Set<Long> wanted = new HashSet<Long>();
+
+	private final ArrayList<Runnable> listeners = new ArrayList<Runnable>();
+	private volatile boolean disposed = false;
+
+	/**
+	 * @param sample
+	 * @param channel
+	 * @param fftSize the window, in frames; a power of two. There are fftSize / 2 frequency bins.
+	 */
+	public Spectrogram(final AudioSample sample, final int channel, final int fftSize) {
+		if ( (fftSize < 2) || ((fftSize & (fftSize - 1)) != 0) ) {
+			throw new IllegalArgumentException("The FFT size must be a power of two.");
+		}
+		this.sample = sample;
+		this.channel = channel;
+		this.fftSize = fftSize;
+		this.window = FFT.hann(fftSize);
+	}
+
+	private static final synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Spectrogram"));
+		}
+		return executor;
+	}
+
+	public final AudioSample getSample() {
+		return this.sample;
+	}
+
+	public final int getChannel() {
+		return this.channel;
+	}
+
+	public final int getFftSize() {
+		return this.fftSize;
+	}
+
+	/**
+	 * The frequency bins, and the height of every tile.
+	 *
+	 * @return
+	 */
+	public final int getBinCount() {
+		return this.fftSize / 2;
+	}
+
+	/**
+	 * The level whose hop is closest to (but not more than) the given frames per pixel.
+	 *
+	 * @param framesPerPixel
+	 * @return
+	 */
+	public static final int selectLevel(double framesPerPixel) {
+		int level = 0;
+		while ( (level < 40) && ((1L << (level + 1)) <= framesPerPixel) ) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * The frames covered by one tile of a level.
+	 *
+	 * @param level
+	 * @return
+	 */
+	public static final long getTileFrames(int level) {
+		return (long) TILE_COLUMNS << level;
+	}
+
+	/**
+	 * Heard (on a background thread) whenever a tile has been computed.
+	 *
+	 * @param listener
+	 */
+	public final synchronized void addListener(final Runnable listener) {
+		this.listeners.add(listener);
+	}
+
+	public final synchronized void removeListener(final Runnable listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Returns a tile if it's been computed, or queues it and returns null. A
+	 * tile isn't queued until everything its windows read (up to fftSize / 2
+	 * frames past its end) has been decoded.
+	 *
+	 * @param level
+	 * @param index
+	 * @return
+	 */
+	public final ImageData getTile(final int level, final long index) {
+		final Long key = key(level, index);
+		synchronized (this) {
+			ImageData tile = this.tiles.get(key);
+			if ( (tile != null) || this.pending.contains(key) || this.disposed ) {
+				return tile;
+			}
+			long end = Math.min((index + 1) * getTileFrames(level) + this.fftSize / 2, this.sample.getNumberOfFrames());
+			if (end > this.sample.getDecodedFrames()) {
+				return null;
+			}
+			this.pending.add(key);
+		}
+		getExecutor().execute(new Runnable() {
+			public void run() {
+				compute(level, index, key);
+			}
+		});
+		return null;
+	}
+
+	/**
+	 * Tells the spectrogram which tiles are on screen. Queued tiles that aren't
+	 * are skipped; tiles already computed are kept regardless.
+	 *
+	 * @param levelAndIndices pairs of level, index
+	 */
+	public final synchronized void setVisibleTiles(final long[] levelAndIndices) {
+		Set<Long> keys = new HashSet<Long>();
+		for (int i = 0; i < levelAndIndices.length; i += 2) {
+			keys.add(key((int) levelAndIndices[i], levelAndIndices[i + 1]));
+		}
+		this.wanted = keys;
+	}
+
+	/**
+	 * Stops computing; queued tiles are dropped and listeners aren't called again.
+	 */
+	public final void dispose() {
+		this.disposed = true;
+		synchronized (this) {
+			this.listeners.clear();
+			this.tiles.clear();
+		}
+	}
+
+	static final Long key(int level, long index) {
+		return Long.valueOf((index << 6) | level);
+	}
+
+	private final void compute(int level, long index, Long key) {
+		synchronized (this) {
+			if ( this.disposed || (! this.wanted.contains(key)) ) {
+				this.pending.remove(key);
+				return;
+			}
+		}
+		ImageData tile = null;
+		Runnable[] toNotify = null;
+		try {
+			tile = this.computeTile(level, index);
+		} finally {
+			synchronized (this) {
+				this.pending.remove(key);
+				if ( (tile != null) && (! this.disposed) ) {
+					this.tiles.put(key, tile);
+					toNotify = this.listeners.toArray(new Runnable[this.listeners.size()]);
+				}
+			}
+		}
+		if (toNotify != null) {
+			for (Runnable listener : toNotify) {
+				listener.run();
+			}
+		}
+	}
+
+	/**
+	 * Column c of the tile is the spectrum of the window centered on the
+	 * middle of its hop. Bin 0 (DC) is the bottom row.
+	 */
+	private final ImageData computeTile(int level, long index) {
+		int n = this.fftSize;
+		int bins = n / 2;
+		long hop = 1L << level;
+		long frames = this.sample.getNumberOfFrames();
+		SampleBuffer samples = this.sample.getAudio(this.channel);
+
+		// Full scale through the Hann window (whose average is 1/2) peaks at n / 4.
+		double reference = this.sample.getFullScale() * (n / 4.0);
+		double levelsPerDb = 255 / -FLOOR_DB;
+
+		FFT fft = new FFT(n);
+		double[] re = new double[n];
+		double[] im = new double[n];
+		ImageData tile = new ImageData(TILE_COLUMNS, bins, 8, this.palette);
+		byte[] pixels = tile.data;
+		int stride = tile.bytesPerLine;
+
+		for (int column = 0; column < TILE_COLUMNS; column++) {
+			if (this.disposed) {
+				return null;
+			}
+			long center = (index * TILE_COLUMNS + column) * hop + hop / 2;
+			if (center - hop / 2 >= frames) {
+				break;
+			}
+			long first = center - n / 2;
+			for (int i = 0; i < n; i++) {
+				long frame = first + i;
+				re[i] = ( (frame >= 0) && (frame < frames) ) ? samples.get((int) frame) * this.window[i] : 0;
+				im[i] = 0;
+			}
+			fft.transform(re, im);
+			for (int bin = 0; bin < bins; bin++) {
+				double magnitude = Math.sqrt(re[bin] * re[bin] + im[bin] * im[bin]) / reference;
+				double db = (magnitude > 0) ? 20 * Math.log10(magnitude) : FLOOR_DB;
+				int color = (int) ((db - FLOOR_DB) * levelsPerDb);
+				color = (color < 0) ? 0 : (color > 255) ? 255 : color;
+				pixels[(bins - 1 - bin) * stride + column] = (byte) color;
+			}
+		}
+		return tile;
+	}
+
+	/**
+	 * Black through blue, magenta, red and yellow to white, quietest to loudest.
+	 */
+	private static final PaletteData createPalette() {
+		int[][] stops = { { 0, 0, 0 }, { 0, 0, 160 }, { 160, 0, 160 }, { 230, 30, 0 }, { 255, 220, 0 }, { 255, 255, 255 } };
+		RGB[] colors = new RGB[256];
+		for (int i = 0; i < 256; i++) {
+			double position = i / 255.0 * (stops.length - 1);
+			int stop = Math.min((int) position, stops.length - 2);
+			double t = position - stop;
+			colors[i] = new RGB(
+					(int) (stops[stop][0] + t * (stops[stop + 1][0] - stops[stop][0])),
+					(int) (stops[stop][1] + t * (stops[stop + 1][1] - stops[stop][1])),
+					(int) (stops[stop][2] + t * (stops[stop + 1][2] - stops[stop][2])));
+		}
+		return new PaletteData(colors);
+	}
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Shows one channel as a spectrogram (time across, frequency up, loudness as
+ * color), the counterpart of a ChannelCanvas. The spectra are computed in the
+ * background by a Spectrogram, in tiles; a paint only draws the tiles that
+ * are visible and have been computed, and asks for the rest, which are drawn
+ * as they arrive. Tiles are kept as Images, so scrolling over ground already
+ * covered only copies pixels.
+ */
+public class SpectrogramCanvas extends Canvas {
+
+	protected static final int BACKGROUND_COLOR = SWT.COLOR_BLACK;
+	protected static final int CURSOR_COLOR = SWT.COLOR_WHITE;
+
+	/**
+	 * The window of each spectrum, in frames (512 frequency bins).
+	 */
+	protected static final int DEFAULT_FFT_SIZE = 1024;
+
+	/**
+	 * How many tile Images are kept, beyond the ones on screen.
+	 */
+	private static final int MAXIMUM_IMAGES = 32;
+
+	private final AudioSample sample;
+	private final Spectrogram spectrogram;
+
+	/**
+	 * Kept for the tile listener, which runs on the Spectrogram's threads
+	 * (where getDisplay() can't be called).
+	 */
+	private final Display display;
+
+	private long visibleStart = 0;
+	private long visibleEnd = -1;
+	private long cursorFrame = -1;
+
+	/**
+	 * Tiles turned into Images, least recently drawn first.
+	 */
+	private final LinkedHashMap<Long, Image> images = new LinkedHashMap<Long, Image>(16, 0.75f, true);
+
+	/**
+	 * Set while a redraw for newly computed tiles is waiting to run on the UI
+	 * thread, so a burst of tiles only redraws once.
+	 */
+	private final AtomicBoolean redrawPosted = new AtomicBoolean(false);
+	private final Runnable tileListener = new Runnable() {
+		public void run() {
+			if (! redrawPosted.compareAndSet(false, true)) {
+				return;
+			}
+			if (display.isDisposed()) {
+				return;
+			}
+			display.asyncExec(new Runnable() {
+				public void run() {
+					redrawPosted.set(false);
+					if (! isDisposed()) {
+						redraw();
+					}
+				}
+			});
+		}
+	};
+
+	public SpectrogramCanvas(Composite parent, int style, AudioSample sample, int channelIndex) {
+		// The background is filled by the painter, around the tiles.
+		super(parent, style | SWT.NO_BACKGROUND);
+		this.sample = sample;
+		this.display = parent.getDisplay();
+		this.spectrogram = new Spectrogram(sample, channelIndex, DEFAULT_FFT_SIZE);
+		this.spectrogram.addListener(this.tileListener);
+		this.setBackground(this.getDisplay().getSystemColor(BACKGROUND_COLOR));
+		this.addPaintListener(new SpectrogramPainter());
+		this.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				spectrogram.dispose();
+				for (Image image : images.values()) {
+					image.dispose();
+				}
+				images.clear();
+			}
+		});
+	}
+
+	public final Spectrogram getSpectrogram() {
+		return this.spectrogram;
+	}
+
+	/**
+	 * Sets the frames shown across the width of the canvas, and redraws it.
+	 * Usually called by WaveformComposite.setVisibleRange().
+	 *
+	 * @param start
+	 * @param end the frame after the last visible one, or -1 for the end of the sample.
+	 */
+	public final void setVisibleRange(long start, long end) {
+		this.visibleStart = start;
+		this.visibleEnd = end;
+		this.redraw();
+	}
+
+	public final long getVisibleStart() {
+		return this.visibleStart;
+	}
+
+	public final long getVisibleEnd() {
+		return (this.visibleEnd < 0) ? this.sample.getNumberOfFrames() : this.visibleEnd;
+	}
+
+	/**
+	 * The frame under an x coordinate of the canvas.
+	 *
+	 * @param x
+	 * @return
+	 */
+	public final long getFrameAt(int x) {
+		return this.visibleStart + (long) (x * this.getFramesPerPixel(this.getClientArea().width));
+	}
+
+	/**
+	 * Moves the cursor, redrawing only the two pixel columns it affects.
+	 *
+	 * @param frame the frame to put the cursor on, or -1 to hide it.
+	 */
+	public final void setCursorFrame(long frame) {
+		int oldX = this.getCursorX();
+		this.cursorFrame = frame;
+		int newX = this.getCursorX();
+		if (oldX == newX) {
+			return;
+		}
+		int height = this.getClientArea().height;
+		if (oldX >= 0) {
+			this.redraw(oldX, 0, 1, height, false);
+		}
+		if (newX >= 0) {
+			this.redraw(newX, 0, 1, height, false);
+		}
+	}
+
+	public final long getCursorFrame() {
+		return this.cursorFrame;
+	}
+
+	private final int getCursorX() {
+		if (this.cursorFrame < 0) {
+			return -1;
+		}
+		int width = this.getClientArea().width;
+		long x = (long) ((this.cursorFrame - this.visibleStart) / this.getFramesPerPixel(width));
+		return ( (x < 0) || (x >= width) ) ? -1 : (int) x;
+	}
+
+	private final double getFramesPerPixel(int width) {
+		return (this.getVisibleEnd() - this.visibleStart) / (double) Math.max(1, width);
+	}
+
+	private final class SpectrogramPainter implements PaintListener {
+		public void paintControl(PaintEvent e) {
+			e.gc.setBackground(getBackground());
+			e.gc.fillRectangle(e.x, e.y, e.width, e.height);
+			drawTiles(e.gc, e.x, e.x + e.width);
+
+			int cursorX = getCursorX();
+			if ( (cursorX >= e.x) && (cursorX < e.x + e.width) ) {
+				e.gc.setForeground(e.display.getSystemColor(CURSOR_COLOR));
+				e.gc.drawLine(cursorX, e.y, cursorX, e.y + e.height);
+			}
+		}
+	}
+
+	/**
+	 * Draws the computed tiles that overlap [fromX, toX), and asks for the
+	 * visible ones that haven't been computed.
+	 *
+	 * @param gc
+	 * @param fromX
+	 * @param toX
+	 */
+	private final void drawTiles(GC gc, int fromX, int toX) {
+		Rectangle area = this.getClientArea();
+		long end = this.getVisibleEnd();
+		if ( (area.width <= 0) || (area.height <= 0) || (end <= this.visibleStart) ) {
+			return;
+		}
+		double framesPerPixel = this.getFramesPerPixel(area.width);
+		int level = Spectrogram.selectLevel(framesPerPixel);
+		long tileFrames = Spectrogram.getTileFrames(level);
+		long firstTile = this.visibleStart / tileFrames;
+		long lastTile = (end - 1) / tileFrames;
+
+		// Everything on screen is wanted, not just the damaged part.
+		long[] visible = new long[(int) (lastTile - firstTile + 1) * 2];
+		for (long tile = firstTile; tile <= lastTile; tile++) {
+			visible[(int) (tile - firstTile) * 2] = level;
+			visible[(int) (tile - firstTile) * 2 + 1] = tile;
+		}
+		this.spectrogram.setVisibleTiles(visible);
+
+		int bins = this.spectrogram.getBinCount();
+		for (long tile = firstTile; tile <= lastTile; tile++) {
+			// The edges are rounded the same way for neighbours, so there are no seams.
+			int x1 = (int) Math.floor((tile * tileFrames - this.visibleStart) / framesPerPixel);
+			int x2 = (int) Math.floor(((tile + 1) * tileFrames - this.visibleStart) / framesPerPixel);
+			if ( (x2 <= fromX) || (x1 >= toX) ) {
+				continue;
+			}
+			Image image = this.getTileImage(level, tile);
+			if (image != null) {
+				gc.drawImage(image, 0, 0, Spectrogram.TILE_COLUMNS, bins, x1, 0, x2 - x1, area.height);
+			}
+		}
+		this.trimImages((int) (lastTile - firstTile + 1));
+	}
+
+	private final Image getTileImage(int level, long tile) {
+		Long key = Spectrogram.key(level, tile);
+		Image image = this.images.get(key);
+		if (image == null) {
+			ImageData data = this.spectrogram.getTile(level, tile);
+			if (data == null) {
+				return null;
+			}
+			image = new Image(this.getDisplay(), data);
+			this.images.put(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Disposes the least recently drawn Images past the limit (but never one on screen).
+	 */
+	private final void trimImages(int onScreen) {
+		int limit = MAXIMUM_IMAGES + onScreen;
+		Iterator<Map.Entry<Long, Image>> iterator = this.images.entrySet().iterator();
+		while (this.images.size() > limit) {
+			iterator.next().getValue().dispose();
+			iterator.remove();
+		}
+	}
+}
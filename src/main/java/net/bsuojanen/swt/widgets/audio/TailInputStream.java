@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads a file that's still being written, like "tail -f": at the end of the
+ * file, read() waits for more to be appended instead of returning -1. It only
+ * ends when the stream is closed or the reading thread is interrupted.
+ */
+final class TailInputStream extends InputStream {
+
+	private final RandomAccessFile file;
+	private final long pollMillis;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param file
+	 * @param position where to start reading
+	 * @param pollMillis how long to wait before looking for more at the end of the file
+	 * @throws IOException
+	 */
+	TailInputStream(File file, long position, long pollMillis) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.file.seek(position);
+		this.pollMillis = pollMillis;
+	}
+
+	public final int read() throws IOException {
+		byte[] one = new byte[1];
+		return (this.read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+	}
+
+	public final int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (! this.closed) {
+			int count = this.file.read(b, off, len);
+			if (count > 0) {
+				return count;
+			}
+			try {
+				Thread.sleep(this.pollMillis);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+		return -1;
+	}
+
+	public final void close() throws IOException {
+		this.closed = true;
+		this.file.close();
+	}
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.swt.SWT;
+
+/**
+ * Renders a waveform thumbnail for every audio file in a directory tree, with
+ * a WaveformRasterizer, on a fixed number of threads. The output tree mirrors
+ * the input one; each image is named for its audio file plus the image
+ * extension (ex. drums/kick.wav.png). No Display is needed.
+ *
+ * Each thread decodes one file at a time (each sample is decoded on a single
+ * thread, since the pool already keeps the cores busy) and the queue of files
+ * waiting is bounded, so memory use stays flat however big the tree is.
+ *
+ * From the command line:
+ *
+ * java -cp haro.jar:swt.jar net.bsuojanen.swt.widgets.audio.ThumbnailRenderer [options] input-dir output-dir
+ */
+public final class ThumbnailRenderer {
+
+	private static final String[] EXTENSIONS = { ".wav", ".wave", ".aif", ".aiff", ".aifc", ".au", ".snd" };
+
+	private final WaveformRasterizer rasterizer;
+	private final int threads;
+	private final AudioSampleOptions options = new AudioSampleOptions();
+	private int format = SWT.IMAGE_PNG;
+	private boolean skipUpToDate = true;
+
+	/**
+	 * @param rasterizer
+	 * @param threads how many files to render at once
+	 */
+	public ThumbnailRenderer(final WaveformRasterizer rasterizer, final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread.");
+		}
+		this.rasterizer = rasterizer;
+		this.threads = threads;
+		this.options.setParallelism(1);
+	}
+
+	/**
+	 * With a cache, files that were rendered before aren't decoded again (only
+	 * their peaks are read back), which makes re-rendering at another size cheap.
+	 *
+	 * @param peakCache or null for none
+	 */
+	public final void setPeakCache(final PeakCache peakCache) {
+		this.options.setPeakCache(peakCache);
+	}
+
+	/**
+	 * @param format ex. SWT.IMAGE_PNG (the default)
+	 */
+	public final void setFormat(final int format) {
+		this.format = format;
+	}
+
+	/**
+	 * Whether to leave alone images that are newer than their audio file (the default).
+	 *
+	 * @param skipUpToDate
+	 */
+	public final void setSkipUpToDate(final boolean skipUpToDate) {
+		this.skipUpToDate = skipUpToDate;
+	}
+
+	/**
+	 * Renders one file.
+	 *
+	 * @param audioFile
+	 * @param imageFile
+	 * @throws Exception if the audio can't be read or the image can't be written.
+	 */
+	public final void render(final File audioFile, final File imageFile) throws Exception {
+		AudioSample sample = new AudioSample(audioFile, this.options);
+		File parent = imageFile.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		WaveformRasterizer.save(this.rasterizer.render(sample), imageFile.getPath(), this.format);
+	}
+
+	/**
+	 * Renders every audio file under inputDirectory, returning when they're all done.
+	 *
+	 * @param inputDirectory
+	 * @param outputDirectory
+	 * @return what was done and how quickly
+	 * @throws InterruptedException
+	 */
+	public final Summary renderTree(final File inputDirectory, final File outputDirectory) throws InterruptedException {
+		final Summary summary = new Summary();
+		long started = System.nanoTime();
+		// When the queue is full the walking thread renders a file itself, which
+		// holds the walk back until the pool catches up.
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(this.threads * 2), new DaemonThreadFactory("ThumbnailRenderer"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			this.walk(inputDirectory, outputDirectory, pool, summary);
+		} finally {
+			pool.shutdown();
+			while (! pool.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Keep waiting.
+			}
+		}
+		summary.nanos = System.nanoTime() - started;
+		return summary;
+	}
+
+	private final void walk(File directory, File outputDirectory, ThreadPoolExecutor pool, final Summary summary) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (final File file : files) {
+			if (file.isDirectory()) {
+				this.walk(file, new File(outputDirectory, file.getName()), pool, summary);
+				continue;
+			}
+			if (! isAudioFile(file)) {
+				continue;
+			}
+			final File imageFile = new File(outputDirectory, file.getName() + "." + WaveformRasterizer.getExtension(this.format));
+			if ( this.skipUpToDate && (imageFile.lastModified() > file.lastModified()) ) {
+				summary.skipped.incrementAndGet();
+				continue;
+			}
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						render(file, imageFile);
+						summary.rendered.incrementAndGet();
+					} catch (Throwable e) {
+						summary.failures.put(file, e);
+					}
+				}
+			});
+		}
+	}
+
+	private static final boolean isAudioFile(File file) {
+		String name = file.getName().toLowerCase();
+		for (String extension : EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * What renderTree() did.
+	 */
+	public static final class Summary {
+
+		private final AtomicInteger rendered = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final Map<File, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<File, Throwable>());
+		private long nanos;
+
+		private Summary() {
+		}
+
+		public final int getRendered() {
+			return this.rendered.get();
+		}
+
+		/**
+		 * @return how many images were already up to date.
+		 */
+		public final int getSkipped() {
+			return this.skipped.get();
+		}
+
+		/**
+		 * @return the files that couldn't be rendered, and why.
+		 */
+		public final Map<File, Throwable> getFailures() {
+			return this.failures;
+		}
+
+		public final long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(this.nanos);
+		}
+
+		/**
+		 * @return files rendered (or failed) per second.
+		 */
+		public final double getFilesPerSecond() {
+			return (this.rendered.get() + this.failures.size()) / (this.nanos / 1e9);
+		}
+	}
+
+	private static final void usage() {
+		System.err.println("Usage: ThumbnailRenderer [options] input-dir output-dir");
+		System.err.println("  -width <pixels>    default 512");
+		System.err.println("  -height <pixels>   default 128");
+		System.err.println("  -threads <count>   default one per processor");
+		System.err.println("  -format png|gif|bmp|jpg   default png");
+		System.err.println("  -rms               draw the RMS envelope too");
+		System.err.println("  -cache <dir>       keep the peaks in a PeakCache in <dir>");
+		System.err.println("  -force             render even if the image is up to date");
+		System.exit(2);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int width = 512;
+		int height = 128;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int format = SWT.IMAGE_PNG;
+		boolean rms = false;
+		boolean force = false;
+		File cacheDirectory = null;
+		File input = null;
+		File output = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-width")) {
+					width = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-height")) {
+					height = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-format")) {
+					String name = args[++i];
+					format = name.equals("gif") ? SWT.IMAGE_GIF : name.equals("bmp") ? SWT.IMAGE_BMP
+							: name.equals("jpg") ? SWT.IMAGE_JPEG : SWT.IMAGE_PNG;
+				} else if (arg.equals("-rms")) {
+					rms = true;
+				} else if (arg.equals("-force")) {
+					force = true;
+				} else if (arg.equals("-cache")) {
+					cacheDirectory = new File(args[++i]);
+				} else if (input == null) {
+					input = new File(arg);
+				} else if (output == null) {
+					output = new File(arg);
+				} else {
+					usage();
+				}
+			}
+		} catch (RuntimeException e) {
+			// A missing or malformed value.
+			usage();
+		}
+		if ( (input == null) || (output == null) || (! input.isDirectory()) ) {
+			usage();
+		}
+
+		WaveformRasterizer rasterizer = new WaveformRasterizer(width, height);
+		rasterizer.setRmsVisible(rms);
+		ThumbnailRenderer renderer = new ThumbnailRenderer(rasterizer, threads);
+		renderer.setFormat(format);
+		renderer.setSkipUpToDate(! force);
+		if (cacheDirectory != null) {
+			renderer.setPeakCache(new PeakCache(cacheDirectory));
+		}
+
+		Summary summary = renderer.renderTree(input, output);
+		for (Map.Entry<File, Throwable> failure : summary.getFailures().entrySet()) {
+			System.err.println(failure.getKey() + ": " + failure.getValue());
+		}
+		System.out.println(summary.getRendered() + " rendered, " + summary.getSkipped() + " up to date, "
+				+ summary.getFailures().size() + " failed in " + summary.getElapsedMillis() + " ms ("
+				+ String.format("%.1f", summary.getFilesPerSecond()) + " files/s)");
+		System.exit(summary.getFailures().isEmpty() ? 0 : 1);
+	}
+}
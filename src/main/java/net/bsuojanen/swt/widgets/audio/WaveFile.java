@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A plain PCM RIFF/WAVE file whose data chunk is memory-mapped. This lets
+ * AudioSample skip Java Sound (and its layers of stream copying) for the most
+ * common kind of file: samples are read straight out of the page cache, and
+ * nothing proportional to the length of the file lives on the heap.
+ *
+ * Integer PCM (8 to 32-bit), IEEE float (32 and 64-bit) and A-law/u-law are
+ * handled here, either by their format tag or as WAVE_FORMAT_EXTENSIBLE with
+ * one of those sub-formats. Anything else makes open() return null, and the
+ * caller falls back to Java Sound.
+ */
+final class WaveFile {
+
+	private static final int WAVE_FORMAT_PCM = 0x0001;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+	private static final int WAVE_FORMAT_ALAW = 0x0006;
+	private static final int WAVE_FORMAT_MULAW = 0x0007;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	/**
+	 * javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT, which isn't there before Java 7.
+	 * Encodings are compared by name, so this one is equal to it.
+	 */
+	static final AudioFormat.Encoding PCM_FLOAT = new AudioFormat.Encoding("PCM_FLOAT");
+
+	/**
+	 * A single MappedByteBuffer can't exceed 2 GB, so big data chunks are mapped
+	 * as several regions of (at most) this many bytes, each holding whole frames.
+	 */
+	private static final int MAX_REGION_BYTES = 1 << 30;
+
+	private final AudioFormat format;
+	private final long frames;
+	private final int frameSize;
+	private final int bytesPerSample;
+	private final int formatTag;
+	private final long dataOffset;
+
+	private final MappedByteBuffer[] regions;
+	private final int framesPerRegion;
+
+	private WaveFile(AudioFormat format, int formatTag, long dataOffset, long frames, MappedByteBuffer[] regions, int framesPerRegion) {
+		this.format = format;
+		this.formatTag = formatTag;
+		this.dataOffset = dataOffset;
+		this.frames = frames;
+		this.frameSize = format.getFrameSize();
+		this.bytesPerSample = format.getSampleSizeInBits() / 8;
+		this.regions = regions;
+		this.framesPerRegion = framesPerRegion;
+	}
+
+	/**
+	 * Parses the RIFF header and maps the data chunk.
+	 *
+	 * @param file
+	 * @return the mapped file, or null if it isn't a PCM WAVE file we can map.
+	 * @throws IOException
+	 */
+	static final WaveFile open(final File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			Header header = readHeader(channel);
+			if (header == null) {
+				return null;
+			}
+
+			int blockAlign = header.format.getFrameSize();
+			long frames = header.dataLength / blockAlign;
+			int framesPerRegion = MAX_REGION_BYTES / blockAlign;
+			int regionCount = (int) ((frames + framesPerRegion - 1) / framesPerRegion);
+
+			MappedByteBuffer[] regions = new MappedByteBuffer[regionCount];
+			for (int r = 0; r < regionCount; r++) {
+				long firstFrame = (long) r * framesPerRegion;
+				long regionFrames = Math.min(framesPerRegion, frames - firstFrame);
+				regions[r] = channel.map(FileChannel.MapMode.READ_ONLY,
+						header.dataOffset + firstFrame * blockAlign, regionFrames * blockAlign);
+				regions[r].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			// The mappings stay valid after the file is closed.
+			return new WaveFile(header.format, header.formatTag, header.dataOffset, frames, regions, framesPerRegion);
+
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parses the RIFF header alone, without mapping anything (ex. for a file
+	 * that's still being recorded, whose data is read as it grows).
+	 *
+	 * @param file
+	 * @return the header, or null if it isn't a PCM WAVE file we can read.
+	 * @throws IOException
+	 */
+	static final Header readHeader(final File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return readHeader(raf.getChannel());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static final Header readHeader(final FileChannel channel) throws IOException {
+		long fileLength = channel.size();
+		if (fileLength < 12) {
+			return null;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header, 0);
+		if ( (header.getInt(0) != fourCC("RIFF")) || (header.getInt(8) != fourCC("WAVE")) ) {
+			return null;
+		}
+
+		ByteBuffer fmt = null;
+		long dataOffset = -1;
+		long dataLength = 0;
+
+		// Walk the chunks until we have both "fmt " and "data".
+		ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		long position = 12;
+		while ( (position + 8 <= fileLength) && ((fmt == null) || (dataOffset < 0)) ) {
+			chunkHeader.clear();
+			readFully(channel, chunkHeader, position);
+			int id = chunkHeader.getInt(0);
+			long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+			long body = position + 8;
+
+			if (id == fourCC("fmt ")) {
+				if ( (size < 16) || (size > 64) ) {
+					return null;
+				}
+				fmt = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, fmt, body);
+			} else if (id == fourCC("data")) {
+				dataOffset = body;
+				// Recorders that were interrupted leave a bogus size; trust the file instead.
+				dataLength = Math.min(size, fileLength - body);
+			}
+
+			// Chunks are padded to an even number of bytes.
+			position = body + size + (size & 1);
+		}
+
+		if ( (fmt == null) || (dataOffset < 0) ) {
+			return null;
+		}
+
+		int formatTag = fmt.getShort(0) & 0xFFFF;
+		int channels = fmt.getShort(2) & 0xFFFF;
+		int sampleRate = fmt.getInt(4);
+		int blockAlign = fmt.getShort(12) & 0xFFFF;
+		int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+
+		if ( (formatTag == WAVE_FORMAT_EXTENSIBLE) && (fmt.capacity() >= 26) ) {
+			// The first two bytes of the sub-format GUID hold the real format tag.
+			formatTag = fmt.getShort(24) & 0xFFFF;
+		}
+
+		AudioFormat.Encoding encoding;
+		switch (formatTag) {
+		case WAVE_FORMAT_PCM:
+			if ( (bitsPerSample != 8) && (bitsPerSample != 16) && (bitsPerSample != 24) && (bitsPerSample != 32) ) {
+				return null;
+			}
+			encoding = (bitsPerSample == 8) ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+			break;
+		case WAVE_FORMAT_IEEE_FLOAT:
+			if ( (bitsPerSample != 32) && (bitsPerSample != 64) ) {
+				return null;
+			}
+			encoding = PCM_FLOAT;
+			break;
+		case WAVE_FORMAT_ALAW:
+		case WAVE_FORMAT_MULAW:
+			if (bitsPerSample != 8) {
+				return null;
+			}
+			encoding = (formatTag == WAVE_FORMAT_ALAW) ? AudioFormat.Encoding.ALAW : AudioFormat.Encoding.ULAW;
+			break;
+		default:
+			return null;
+		}
+
+		if ( (channels < 1) || (blockAlign != channels * (bitsPerSample / 8)) ) {
+			return null;
+		}
+
+		AudioFormat format = new AudioFormat(encoding, sampleRate, bitsPerSample, channels, blockAlign, sampleRate, false);
+		return new Header(format, formatTag, dataOffset, dataLength);
+	}
+
+	final AudioFormat getFormat() {
+		return this.format;
+	}
+
+	final long getNumberOfFrames() {
+		return this.frames;
+	}
+
+	/**
+	 * Where in the file the samples start.
+	 *
+	 * @return
+	 */
+	final long getDataOffset() {
+		return this.dataOffset;
+	}
+
+	/**
+	 * Copies the raw (interleaved) bytes of a run of frames.
+	 *
+	 * @param frame the first frame to copy
+	 * @param dest
+	 * @param frameCount
+	 */
+	final void read(long frame, byte[] dest, int frameCount) {
+		int destOffset = 0;
+		while (frameCount > 0) {
+			int region = (int) (frame / this.framesPerRegion);
+			int regionFrame = (int) (frame % this.framesPerRegion);
+			int count = Math.min(frameCount, this.framesPerRegion - regionFrame);
+
+			// duplicate() so concurrent readers don't fight over the buffer's position.
+			ByteBuffer buffer = this.regions[region].duplicate();
+			buffer.position(regionFrame * this.frameSize);
+			buffer.get(dest, destOffset, count * this.frameSize);
+
+			destOffset += count * this.frameSize;
+			frame += count;
+			frameCount -= count;
+		}
+	}
+
+	/**
+	 * Decodes a single sample straight from the mapped data, the same way
+	 * AudioSample decodes whole chunks: 8-bit samples are unsigned in WAVE files
+	 * and are returned centered on zero, companded ones are expanded to 16 bits,
+	 * and floats are scaled so that 1.0 is Integer.MAX_VALUE.
+	 *
+	 * @param channel
+	 * @param frame
+	 * @return
+	 */
+	final int getSample(int channel, long frame) {
+		MappedByteBuffer buffer = this.regions[(int) (frame / this.framesPerRegion)];
+		int index = (int) (frame % this.framesPerRegion) * this.frameSize + (channel * this.bytesPerSample);
+
+		if (this.formatTag == WAVE_FORMAT_IEEE_FLOAT) {
+			double value = (this.bytesPerSample == 4) ? buffer.getFloat(index) : buffer.getDouble(index);
+			return (int) (value * AudioSample.FLOAT_SCALE);
+		}
+
+		switch (this.bytesPerSample) {
+		case 1:
+			if (this.formatTag == WAVE_FORMAT_ALAW) {
+				return G711.ALAW[buffer.get(index) & 0xFF];
+			} else if (this.formatTag == WAVE_FORMAT_MULAW) {
+				return G711.ULAW[buffer.get(index) & 0xFF];
+			}
+			return (buffer.get(index) & 0xFF) - 128;
+		case 2:
+			return buffer.getShort(index);
+		case 3:
+			return (buffer.get(index + 2) << 16) | ((buffer.get(index + 1) & 0xFF) << 8) | (buffer.get(index) & 0xFF);
+		default:
+			return buffer.getInt(index);
+		}
+	}
+
+	/**
+	 * What's in a WAVE file's header: the format, and where the samples are.
+	 */
+	static final class Header {
+
+		private final AudioFormat format;
+		private final int formatTag;
+		private final long dataOffset;
+		private final long dataLength;
+
+		private Header(AudioFormat format, int formatTag, long dataOffset, long dataLength) {
+			this.format = format;
+			this.formatTag = formatTag;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+		}
+
+		final AudioFormat getFormat() {
+			return this.format;
+		}
+
+		/**
+		 * Where in the file the samples start.
+		 *
+		 * @return
+		 */
+		final long getDataOffset() {
+			return this.dataOffset;
+		}
+	}
+
+	private static final void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+		}
+	}
+
+	private static final int fourCC(String id) {
+		return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+/**
+ * The min, max and RMS of each pixel column of one channel. Columns are read
+ * from the coarsest level of the sample's PeakPyramid that still fits inside a
+ * column, so the cost depends on the width and not on the length of the file
+ * or how far it's zoomed out. When zoomed in past the smallest bucket the raw
+ * samples are used instead (which, for a sample opened from a PeakCache, is
+ * the only time the audio itself gets decoded).
+ *
+ * ChannelCanvas and WaveformRasterizer both draw from this, so a thumbnail
+ * looks like the widget. The arrays are kept between calls; computing the
+ * same width again allocates nothing.
+ */
+final class WaveformColumns {
+
+	int[] min = new int[0];
+	int[] max = new int[0];
+	double[] rms = new double[0];
+
+	/**
+	 * @param sample
+	 * @param channel
+	 * @param first the frame at the left edge
+	 * @param framesPerPixel
+	 * @param width
+	 * @param withRms whether to fill in rms too
+	 * @return the number of columns computed; fewer than width if the rest aren't decoded (yet).
+	 */
+	final int compute(AudioSample sample, int channel, long first, double framesPerPixel, int width, boolean withRms) {
+		if (this.min.length != width) {
+			this.min = new int[width];
+			this.max = new int[width];
+			this.rms = new double[width];
+		}
+
+		// While the sample is still loading only a prefix of it can be drawn.
+		int decoded = (int) sample.getDecodedFrames();
+		if (decoded == 0) {
+			return 0;
+		}
+
+		PeakPyramid pyramid = sample.getPeakPyramid();
+		int level = pyramid.selectLevel(framesPerPixel);
+		if ( (level < 0) && (! sample.isDecoded()) ) {
+			// Drawing mustn't be what reads the raw samples; the finest summary will do until they're here.
+			level = 0;
+		}
+		int bucketSize = (level < 0) ? 1 : pyramid.getBucketSize(level);
+		SampleBuffer samples = (level < 0) ? sample.getAudio(channel) : null;
+
+		int x = 0;
+		for (; x < width; x++) {
+			int start = (int) first + (int) (x * framesPerPixel);
+			int end = Math.min(decoded, Math.max(start + 1, (int) first + (int) ((x + 1) * framesPerPixel)));
+			if (start >= decoded) {
+				break;
+			}
+
+			int min;
+			int max;
+			double sumOfSquares = 0;
+			int sumFrames;
+
+			if (level < 0) {
+				min = samples.get(start);
+				max = min;
+				sumOfSquares = (double) min * min;
+				for (int t = start + 1; t < end; t++) {
+					int value = samples.get(t);
+					if (value < min) {
+						min = value;
+					}
+					if (value > max) {
+						max = value;
+					}
+					sumOfSquares += (double) value * value;
+				}
+				sumFrames = end - start;
+			} else {
+				int lastBucket = (end - 1) / bucketSize;
+				int bucket = start / bucketSize;
+				min = pyramid.getMin(level, channel, bucket);
+				max = pyramid.getMax(level, channel, bucket);
+				if (withRms) {
+					sumOfSquares = pyramid.getSumOfSquares(level, channel, bucket);
+				}
+				for (bucket++; bucket <= lastBucket; bucket++) {
+					min = Math.min(min, pyramid.getMin(level, channel, bucket));
+					max = Math.max(max, pyramid.getMax(level, channel, bucket));
+					if (withRms) {
+						sumOfSquares += pyramid.getSumOfSquares(level, channel, bucket);
+					}
+				}
+				// The buckets may reach past the column (and the last one may be partly filled).
+				sumFrames = Math.min((lastBucket + 1) * bucketSize, decoded) - (start / bucketSize) * bucketSize;
+			}
+
+			this.min[x] = min;
+			this.max[x] = max;
+			if (withRms) {
+				this.rms[x] = Math.sqrt(sumOfSquares / sumFrames);
+			}
+		}
+		return x;
+	}
+}
@@ -10,39 +10,285 @@
  *******************************************************************************/
 package net.bsuojanen.swt.widgets.audio;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.ScrollBar;
 
 public class WaveformComposite extends Composite {
 	
 	protected static final int BACKGROUND_COLOR = SWT.COLOR_BLACK;
+	protected static final int STATUS_COLOR = SWT.COLOR_GRAY;
+	
+	/**
+	 * The least time between redraws of a sample that's still loading. The
+	 * decoding threads never wait on the UI thread; progress in between is
+	 * simply picked up by the next redraw.
+	 */
+	protected static final long PROGRESSIVE_REDRAW_MILLIS = 100;
+	
+	/**
+	 * How much one notch of the mouse wheel zooms in or out.
+	 */
+	protected static final double WHEEL_ZOOM_FACTOR = 1.25;
+	
+	/**
+	 * The fewest frames that can be zoomed into.
+	 */
+	protected static final long MIN_VISIBLE_FRAMES = 16;
+	
+	/**
+	 * How often an animated cursor moves (about 60 times a second).
+	 */
+	protected static final int CURSOR_ANIMATION_MILLIS = 16;
+	
 	private ArrayList<ChannelCanvas> channelList;
 	private AudioSample sample;
+	
+	/**
+	 * The load in progress (see load()), if any, and the listener that
+	 * identifies it. Callbacks from any other listener are from a load that was
+	 * canceled or superseded, and are ignored.
+	 */
+	private Future<AudioSample> pendingLoad;
+	private AudioSampleLoadListener pendingListener;
+	
+	/**
+	 * Drawn in place of the waveform (ex. "Loading..."), or null.
+	 */
+	private String statusMessage;
+	
+	/**
+	 * The visible frames [visibleStart, visibleEnd), shared by every channel.
+	 * A visibleEnd of -1 means the whole sample is shown (see showAll()).
+	 */
+	private long visibleStart = 0;
+	private long visibleEnd = -1;
+	
+	private boolean rmsVisible = false;
+	private boolean markersVisible = false;
+	
+	/**
+	 * Each channel's SpectrogramCanvas, under its ChannelCanvas, while
+	 * spectrogramVisible (otherwise null).
+	 */
+	private boolean spectrogramVisible = false;
+	private ArrayList<SpectrogramCanvas> spectrogramList;
+	
+	/**
+	 * Shown instead of sample by setLiveSample(), and the listener that keeps
+	 * the channels scrolling.
+	 */
+	private LiveSample liveSample;
+	private LiveSampleListener liveListener;
+	
+	/**
+	 * The cursor (playhead) position, or -1 for none. While it's animated, it's
+	 * at cursorAnchorFrame plus however many frames have been played (at
+	 * cursorFramesPerSecond) since cursorAnchorNanos.
+	 */
+	private long cursorFrame = -1;
+	private long cursorAnchorFrame;
+	private long cursorAnchorNanos;
+	private double cursorFramesPerSecond;
+	private boolean cursorAnimating = false;
+	private final Runnable cursorAnimator = new Runnable() {
+		public void run() {
+			if ( isDisposed() || (! cursorAnimating) ) {
+				return;
+			}
+			double seconds = (System.nanoTime() - cursorAnchorNanos) / 1e9;
+			moveCursor(cursorAnchorFrame + (long) (seconds * cursorFramesPerSecond));
+			getDisplay().timerExec(CURSOR_ANIMATION_MILLIS, this);
+		}
+	};
 
 	public WaveformComposite(Composite parent, int style) {
-		super(parent, style);
+		super(parent, style | SWT.H_SCROLL);
 		this.setLayout(new FillLayout(SWT.VERTICAL));
 		this.setBackground(this.getDisplay().getSystemColor(BACKGROUND_COLOR));
+		this.addPaintListener(new StatusPainter());
+		this.getHorizontalBar().addListener(SWT.Selection, new Listener() {
+			public void handleEvent(Event e) {
+				ScrollBar bar = getHorizontalBar();
+				long span = getVisibleEnd() - getVisibleStart();
+				setVisibleRange(bar.getSelection(), bar.getSelection() + span);
+			}
+		});
+		this.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				cancelLoad();
+				stopListening();
+				stopCursorAnimation();
+			}
+		});
 	}
 	
 	public void setSample(AudioSample sample) {
-		if( (this.sample != null) && (this.channelList != null) ) {
+		if (this.channelList != null) {
 			this.reset();
 		}
 		
 		this.sample = sample;
+		this.visibleStart = 0;
+		this.visibleEnd = -1;
+		this.stopCursorAnimation();
+		this.cursorFrame = -1;
+		this.setStatusMessage(null);
 		
+		Listener wheelListener = new WheelListener();
 		this.channelList = new ArrayList<ChannelCanvas>();
 		int numChannels = this.sample.getNumberOfChannels();
 		for (int channelNum = 0; channelNum < numChannels; channelNum++) {
 			ChannelCanvas channel = new ChannelCanvas(this, SWT.NONE, this.sample, channelNum);
+			channel.addListener(SWT.MouseVerticalWheel, wheelListener);
+			channel.setRmsVisible(this.rmsVisible);
+			channel.setMarkersVisible(this.markersVisible);
 			this.channelList.add(channel);
 			this.layout(true);
 		}
+		if (this.spectrogramVisible) {
+			this.createSpectrograms();
+		}
+		this.updateScrollBar();
+	}
+	
+	/**
+	 * Shows or hides a spectrogram under each channel's waveform. The spectra
+	 * are computed in the background, only for what's on screen, and kept
+	 * while scrolling and zooming (see SpectrogramCanvas).
+	 * 
+	 * @param visible
+	 */
+	public void setSpectrogramVisible(boolean visible) {
+		if (visible == this.spectrogramVisible) {
+			return;
+		}
+		this.spectrogramVisible = visible;
+		if (this.channelList == null) {
+			return;
+		}
+		if (visible) {
+			this.createSpectrograms();
+		} else if (this.spectrogramList != null) {
+			for (SpectrogramCanvas spectrogram : this.spectrogramList) {
+				spectrogram.dispose();
+			}
+			this.spectrogramList = null;
+		}
+		this.layout(true);
+	}
+	
+	public boolean isSpectrogramVisible() {
+		return this.spectrogramVisible;
+	}
+	
+	private void createSpectrograms() {
+		if (this.sample == null) {
+			return;
+		}
+		Listener wheelListener = new WheelListener();
+		this.spectrogramList = new ArrayList<SpectrogramCanvas>();
+		for (int channelNum = 0; channelNum < this.channelList.size(); channelNum++) {
+			SpectrogramCanvas spectrogram = new SpectrogramCanvas(this, SWT.NONE, this.sample, channelNum);
+			spectrogram.moveBelow(this.channelList.get(channelNum));
+			spectrogram.addListener(SWT.MouseVerticalWheel, wheelListener);
+			spectrogram.setVisibleRange(this.visibleStart, this.visibleEnd);
+			spectrogram.setCursorFrame(this.cursorFrame);
+			this.spectrogramList.add(spectrogram);
+		}
+		this.layout(true);
+	}
+	
+	public AudioSample getSample() {
+		return this.sample;
+	}
+	
+	/**
+	 * Shows a LiveSample, one ChannelCanvas per channel, with the newest audio
+	 * at the right edge. As columns are added the channels scroll left and only
+	 * the new columns are drawn. Redraws are coalesced: while one is pending on
+	 * the UI thread, further columns just join it.
+	 * 
+	 * @param liveSample
+	 */
+	public void setLiveSample(LiveSample liveSample) {
+		this.cancelLoad();
+		this.reset();
+		this.setStatusMessage(null);
+		
+		this.liveSample = liveSample;
+		this.channelList = new ArrayList<ChannelCanvas>();
+		int numChannels = liveSample.getNumberOfChannels();
+		for (int channelNum = 0; channelNum < numChannels; channelNum++) {
+			this.channelList.add(new ChannelCanvas(this, SWT.NONE, liveSample, channelNum));
+		}
+		this.layout(true);
+		
+		this.liveListener = new UIThreadLiveListener(liveSample);
+		liveSample.addListener(this.liveListener);
+	}
+	
+	public LiveSample getLiveSample() {
+		return this.liveSample;
+	}
+	
+	/**
+	 * Opens the file on a background thread (see AudioSampleLoader). A loading
+	 * message is shown until the header has been read, then the waveform is drawn
+	 * progressively as it's decoded. Any load already in progress is canceled.
+	 * 
+	 * The listener's methods are called on the UI thread.
+	 * 
+	 * @param file
+	 * @param options
+	 * @param listener may be null
+	 * @return the pending sample
+	 */
+	public Future<AudioSample> load(final File file, final AudioSampleOptions options, final AudioSampleLoadListener listener) {
+		this.cancelLoad();
+		this.reset();
+		this.setStatusMessage("Loading " + file.getName() + "...");
+		
+		this.pendingListener = new UIThreadLoadListener(listener);
+		this.pendingLoad = AudioSampleLoader.getDefault().load(file, options, this.pendingListener);
+		return this.pendingLoad;
+	}
+	
+	/**
+	 * Cancels the load in progress, if there is one.
+	 */
+	public void cancelLoad() {
+		if (this.pendingLoad != null) {
+			this.pendingLoad.cancel(true);
+			this.pendingLoad = null;
+			this.pendingListener = null;
+			if (! this.isDisposed()) {
+				if ( (this.sample != null) && (! this.sample.isComplete()) ) {
+					// Don't leave half a waveform behind.
+					this.reset();
+				}
+				this.setStatusMessage(null);
+			}
+		}
+	}
+	
+	public boolean isLoading() {
+		return this.pendingLoad != null;
 	}
 	
 	public void reset() {
@@ -50,7 +296,517 @@ public class WaveformComposite extends Composite {
 		for (int i=0; i<controls.length; i++) {
 			controls[i].dispose();
 		}
+		this.stopListening();
 		this.sample = null;
 		this.channelList = null;
+		this.spectrogramList = null;
+		this.visibleStart = 0;
+		this.visibleEnd = -1;
+		this.updateScrollBar();
+	}
+	
+	/**
+	 * Shows the frames [start, end) across the width of the waveform. The range
+	 * is kept inside the sample and at least MIN_VISIBLE_FRAMES long.
+	 * 
+	 * Only the summary buckets (or, zoomed in far enough, the samples) inside the
+	 * range are read when painting, so a narrow range of a long file is as cheap
+	 * to draw as the whole of a short one.
+	 * 
+	 * @param start
+	 * @param end
+	 */
+	public void setVisibleRange(long start, long end) {
+		if (this.sample == null) {
+			return;
+		}
+		long frames = this.sample.getNumberOfFrames();
+		long span = Math.max(Math.min(end - start, frames), Math.min(MIN_VISIBLE_FRAMES, frames));
+		start = Math.max(0, Math.min(start, frames - span));
+		
+		if ( (start == 0) && (span == frames) ) {
+			this.showAll();
+			return;
+		}
+		this.visibleStart = start;
+		this.visibleEnd = start + span;
+		this.updateVisibleRange();
+	}
+	
+	/**
+	 * Zooms all the way out.
+	 */
+	public void showAll() {
+		this.visibleStart = 0;
+		this.visibleEnd = -1;
+		this.updateVisibleRange();
+	}
+	
+	/**
+	 * Zooms in (factor > 1) or out (factor < 1), keeping the given frame at the
+	 * same place on screen.
+	 * 
+	 * @param factor
+	 * @param anchorFrame
+	 */
+	public void zoom(double factor, long anchorFrame) {
+		if (this.sample == null) {
+			return;
+		}
+		long start = this.getVisibleStart();
+		long span = this.getVisibleEnd() - start;
+		long newSpan = Math.max(1, Math.round(span / factor));
+		long newStart = anchorFrame - Math.round((anchorFrame - start) * (newSpan / (double) span));
+		this.setVisibleRange(newStart, newStart + newSpan);
+	}
+	
+	/**
+	 * Moves the visible range by the given number of frames, keeping its width.
+	 * 
+	 * @param frames negative to scroll towards the start.
+	 */
+	public void scroll(long frames) {
+		long start = this.getVisibleStart();
+		long span = this.getVisibleEnd() - start;
+		this.setVisibleRange(start + frames, start + frames + span);
+	}
+	
+	/**
+	 * Shows or hides the RMS (loudness) envelope under each channel's peaks.
+	 * 
+	 * @param visible
+	 */
+	public void setRmsVisible(boolean visible) {
+		this.rmsVisible = visible;
+		if (this.channelList != null) {
+			for (ChannelCanvas channel : this.channelList) {
+				channel.setRmsVisible(visible);
+			}
+		}
+	}
+	
+	public boolean isRmsVisible() {
+		return this.rmsVisible;
+	}
+	
+	/**
+	 * Shows or hides the silences and onsets of the sample, if it was opened
+	 * with MarkerOptions (see AudioSampleOptions.setMarkerOptions()).
+	 * 
+	 * @param visible
+	 */
+	public void setMarkersVisible(boolean visible) {
+		this.markersVisible = visible;
+		if (this.channelList != null) {
+			for (ChannelCanvas channel : this.channelList) {
+				channel.setMarkersVisible(visible);
+			}
+		}
+	}
+	
+	public boolean isMarkersVisible() {
+		return this.markersVisible;
+	}
+	
+	/**
+	 * Moves the cursor to the next (or previous) onset, from the cursor or else
+	 * the start of the view, and scrolls it into view.
+	 * 
+	 * @param forward
+	 * @return false if there's no onset that way (or no MarkerIndex), and the cursor hasn't moved.
+	 */
+	public boolean moveCursorToOnset(boolean forward) {
+		MarkerIndex markers = (this.sample == null) ? null : this.sample.getMarkerIndex();
+		if (markers == null) {
+			return false;
+		}
+		long from = this.getNavigationFrame();
+		return this.moveCursorTo(forward ? markers.getNextOnset(from) : markers.getPreviousOnset(from));
+	}
+	
+	/**
+	 * Moves the cursor to where the next (or previous) sound starts after a
+	 * silence, from the cursor or else the start of the view, and scrolls it
+	 * into view.
+	 * 
+	 * @param forward
+	 * @return false if there's no sound that way (or no MarkerIndex), and the cursor hasn't moved.
+	 */
+	public boolean moveCursorToSound(boolean forward) {
+		MarkerIndex markers = (this.sample == null) ? null : this.sample.getMarkerIndex();
+		if (markers == null) {
+			return false;
+		}
+		long from = this.getNavigationFrame();
+		return this.moveCursorTo(forward ? markers.getNextSound(from) : markers.getPreviousSound(from));
+	}
+	
+	private long getNavigationFrame() {
+		return (this.cursorFrame >= 0) ? this.cursorFrame : this.visibleStart;
+	}
+	
+	private boolean moveCursorTo(long frame) {
+		if (frame < 0) {
+			return false;
+		}
+		long start = this.getVisibleStart();
+		long span = this.getVisibleEnd() - start;
+		if ( (frame < start) || (frame >= start + span) ) {
+			// Keep the zoom, with the frame a tenth of the way in.
+			long newStart = Math.max(0, frame - span / 10);
+			this.setVisibleRange(newStart, newStart + span);
+		}
+		this.setCursorFrame(frame);
+		return true;
+	}
+	
+	/**
+	 * Puts the cursor (ex. a playhead) on a frame. Only the pixel columns the
+	 * cursor leaves and moves to are redrawn, from each channel's cached image,
+	 * so it's cheap to call many times a second. If the cursor is animated,
+	 * the animation carries on from the new frame.
+	 * 
+	 * @param frame or -1 to hide the cursor.
+	 */
+	public void setCursorFrame(long frame) {
+		if (this.cursorAnimating) {
+			this.cursorAnchorFrame = frame;
+			this.cursorAnchorNanos = System.nanoTime();
+		}
+		this.moveCursor(frame);
+	}
+	
+	public long getCursorFrame() {
+		return this.cursorFrame;
+	}
+	
+	/**
+	 * Moves the cursor smoothly from a frame at the given rate (ex. the sample
+	 * rate, while playing), every CURSOR_ANIMATION_MILLIS. Calling
+	 * setCursorFrame() with the player's actual position now and again keeps
+	 * the two from drifting apart.
+	 * 
+	 * @param frame
+	 * @param framesPerSecond
+	 */
+	public void animateCursor(long frame, double framesPerSecond) {
+		this.cursorAnchorFrame = frame;
+		this.cursorAnchorNanos = System.nanoTime();
+		this.cursorFramesPerSecond = framesPerSecond;
+		this.moveCursor(frame);
+		if (! this.cursorAnimating) {
+			this.cursorAnimating = true;
+			this.getDisplay().timerExec(CURSOR_ANIMATION_MILLIS, this.cursorAnimator);
+		}
+	}
+	
+	/**
+	 * Stops the cursor where it is.
+	 */
+	public void stopCursorAnimation() {
+		if (this.cursorAnimating) {
+			this.cursorAnimating = false;
+			this.getDisplay().timerExec(-1, this.cursorAnimator);
+		}
+	}
+	
+	public boolean isCursorAnimating() {
+		return this.cursorAnimating;
+	}
+	
+	private void moveCursor(long frame) {
+		this.cursorFrame = frame;
+		if (this.channelList != null) {
+			for (ChannelCanvas channel : this.channelList) {
+				channel.setCursorFrame(frame);
+			}
+		}
+		if (this.spectrogramList != null) {
+			for (SpectrogramCanvas spectrogram : this.spectrogramList) {
+				spectrogram.setCursorFrame(frame);
+			}
+		}
+	}
+	
+	public long getVisibleStart() {
+		return this.visibleStart;
+	}
+	
+	/**
+	 * @return the frame after the last visible one.
+	 */
+	public long getVisibleEnd() {
+		if (this.visibleEnd >= 0) {
+			return this.visibleEnd;
+		}
+		return (this.sample == null) ? 0 : this.sample.getNumberOfFrames();
+	}
+	
+	private void updateVisibleRange() {
+		if (this.channelList != null) {
+			for (ChannelCanvas channel : this.channelList) {
+				channel.setVisibleRange(this.visibleStart, this.visibleEnd);
+			}
+		}
+		if (this.spectrogramList != null) {
+			for (SpectrogramCanvas spectrogram : this.spectrogramList) {
+				spectrogram.setVisibleRange(this.visibleStart, this.visibleEnd);
+			}
+		}
+		this.updateScrollBar();
+	}
+	
+	private void updateScrollBar() {
+		ScrollBar bar = this.getHorizontalBar();
+		long frames = (this.sample == null) ? 0 : this.sample.getNumberOfFrames();
+		long span = this.getVisibleEnd() - this.visibleStart;
+		if ( (frames == 0) || (span >= frames) ) {
+			bar.setEnabled(false);
+			bar.setValues(0, 0, 1, 1, 1, 1);
+			return;
+		}
+		bar.setEnabled(true);
+		bar.setValues((int) this.visibleStart, 0, (int) frames, (int) span,
+				(int) Math.max(1, span / 10), (int) span);
+	}
+	
+	/**
+	 * The mouse wheel zooms in and out around the pointer. With Shift held down
+	 * it scrolls instead.
+	 */
+	private final class WheelListener implements Listener {
+		public void handleEvent(Event e) {
+			if ( (sample == null) || (e.count == 0) ) {
+				return;
+			}
+			e.doit = false;
+			if ((e.stateMask & SWT.SHIFT) != 0) {
+				long span = getVisibleEnd() - getVisibleStart();
+				scroll(-e.count * Math.max(1, span / 10));
+			} else {
+				long frame = (e.widget instanceof SpectrogramCanvas)
+						? ((SpectrogramCanvas) e.widget).getFrameAt(e.x)
+						: ((ChannelCanvas) e.widget).getFrameAt(e.x);
+				double factor = Math.pow(WHEEL_ZOOM_FACTOR, e.count);
+				zoom(factor, frame);
+			}
+		}
+	}
+	
+	/**
+	 * Repaints every channel (ex. as more of the sample is decoded).
+	 */
+	public void redrawChannels() {
+		if (this.channelList == null) {
+			return;
+		}
+		this.updateScrollBar();
+		for (ChannelCanvas channel : this.channelList) {
+			channel.refresh();
+		}
+		if (this.spectrogramList != null) {
+			// Tiles that are now fully decoded get computed.
+			for (SpectrogramCanvas spectrogram : this.spectrogramList) {
+				spectrogram.redraw();
+			}
+		}
+	}
+	
+	private void stopListening() {
+		if (this.liveSample != null) {
+			this.liveSample.removeListener(this.liveListener);
+			this.liveSample = null;
+			this.liveListener = null;
+		}
+	}
+	
+	private void setStatusMessage(String message) {
+		this.statusMessage = message;
+		this.redraw();
+	}
+	
+	private final class StatusPainter implements PaintListener {
+		public void paintControl(PaintEvent e) {
+			if (statusMessage == null) {
+				return;
+			}
+			Point extent = e.gc.textExtent(statusMessage);
+			e.gc.setForeground(e.display.getSystemColor(STATUS_COLOR));
+			e.gc.drawText(statusMessage, (getSize().x - extent.x) / 2, (getSize().y - extent.y) / 2, true);
+		}
+	}
+	
+	/**
+	 * Scrolls the live channels on the UI thread as columns arrive. Only one
+	 * update is ever waiting to run; it picks up every column added meanwhile.
+	 */
+	private final class UIThreadLiveListener extends LiveSampleListener {
+		
+		private final LiveSample liveSample;
+		private final AtomicBoolean posted = new AtomicBoolean(false);
+		
+		/**
+		 * Captured on the UI thread; columnsAdded() is called from the capture thread.
+		 */
+		private final Display display;
+		
+		private UIThreadLiveListener(LiveSample liveSample) {
+			this.liveSample = liveSample;
+			this.display = getDisplay();
+		}
+		
+		public void columnsAdded(final LiveSample sample, final long columnCount) {
+			if (! this.posted.compareAndSet(false, true)) {
+				return;
+			}
+			if (this.display.isDisposed()) {
+				return;
+			}
+			this.display.asyncExec(new Runnable() {
+				public void run() {
+					posted.set(false);
+					if ( isDisposed() || (getLiveSample() != liveSample) || (channelList == null) ) {
+						return;
+					}
+					for (ChannelCanvas channel : channelList) {
+						channel.appendLiveColumns();
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Moves the loader's callbacks onto the UI thread, shows the sample as soon as
+	 * its header has been read and redraws it as it's decoded. Progress updates
+	 * are coalesced: a new one is only posted once the last has been handled, and
+	 * no more often than PROGRESSIVE_REDRAW_MILLIS.
+	 */
+	private final class UIThreadLoadListener extends AudioSampleLoadListener {
+		
+		private final AudioSampleLoadListener listener;
+		/**
+		 * Won by one decoding thread at a time (in parallel mode several report
+		 * progress at once), and only given back once its update has run.
+		 */
+		private final AtomicBoolean progressPosted = new AtomicBoolean(false);
+		
+		/**
+		 * Only written by the thread holding progressPosted.
+		 */
+		private volatile long lastProgressNanos = 0;
+		
+		/**
+		 * Captured on the UI thread; the callbacks come from the loader's.
+		 */
+		private final Display display;
+		
+		private UIThreadLoadListener(AudioSampleLoadListener listener) {
+			this.listener = listener;
+			this.display = getDisplay();
+		}
+		
+		private boolean isCurrent() {
+			return (! isDisposed()) && (pendingListener == this);
+		}
+		
+		private void post(final Runnable runnable) {
+			if (! this.display.isDisposed()) {
+				this.display.asyncExec(runnable);
+			}
+		}
+		
+		public void loadStarted(final AudioSample sample) {
+			this.post(new Runnable() {
+				public void run() {
+					if (! isCurrent()) {
+						return;
+					}
+					setSample(sample);
+					if (listener != null) {
+						listener.loadStarted(sample);
+					}
+				}
+			});
+		}
+		
+		public void loadProgress(final File file, final long framesDecoded, final long totalFrames) {
+			long now = System.nanoTime();
+			if ( (now - this.lastProgressNanos < PROGRESSIVE_REDRAW_MILLIS * 1000000L)
+					|| (! this.progressPosted.compareAndSet(false, true)) ) {
+				return;
+			}
+			// Checked again now it's ours: another thread may have posted (and its update run) since we looked.
+			if (now - this.lastProgressNanos < PROGRESSIVE_REDRAW_MILLIS * 1000000L) {
+				this.progressPosted.set(false);
+				return;
+			}
+			this.lastProgressNanos = now;
+			this.post(new Runnable() {
+				public void run() {
+					progressPosted.set(false);
+					if (! isCurrent()) {
+						return;
+					}
+					if (sample == null) {
+						if (totalFrames > 0) {
+							setStatusMessage("Loading " + file.getName() + "... " + (100 * framesDecoded / totalFrames) + "%");
+						}
+					} else {
+						redrawChannels();
+					}
+					if (listener != null) {
+						listener.loadProgress(file, framesDecoded, totalFrames);
+					}
+				}
+			});
+		}
+		
+		public void loadCompleted(final AudioSample sample) {
+			this.post(new Runnable() {
+				public void run() {
+					if (! isCurrent()) {
+						return;
+					}
+					pendingLoad = null;
+					pendingListener = null;
+					if (getSample() == sample) {
+						// Already showing; draw the rest of it.
+						redrawChannels();
+					} else {
+						setSample(sample);
+					}
+					if (listener != null) {
+						listener.loadCompleted(sample);
+					}
+				}
+			});
+		}
+		
+		public void loadFailed(final File file, final Exception e) {
+			this.post(new Runnable() {
+				public void run() {
+					if (! isCurrent()) {
+						return;
+					}
+					pendingLoad = null;
+					pendingListener = null;
+					setStatusMessage("Unable to open " + file.getName());
+					if (listener != null) {
+						listener.loadFailed(file, e);
+					}
+				}
+			});
+		}
+		
+		public void loadCanceled(final File file) {
+			this.post(new Runnable() {
+				public void run() {
+					if (listener != null) {
+						listener.loadCanceled(file);
+					}
+				}
+			});
+		}
 	}
 }
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Brian T. Suojanen. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms
+ * of the Eclipse Public License v1.0 which is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Brian T. Suojanen (brian dot suojanen at outlook dot com)
+ *******************************************************************************/
+package net.bsuojanen.swt.widgets.audio;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Draws a sample's waveform straight into ImageData, one band per channel,
+ * without a Display, a GC or any widget, so it works on a headless server.
+ * ChannelCanvas draws its images with one too (see WaveformColumns for the columns).
+ *
+ * Once configured, a rasterizer can be shared by any number of threads;
+ * render() keeps nothing between calls.
+ *
+ * Example:
+ *
+ * WaveformRasterizer rasterizer = new WaveformRasterizer(512, 128);
+ * ImageData data = rasterizer.render(new AudioSample(file));
+ * WaveformRasterizer.save(data, "waveform.png", SWT.IMAGE_PNG);
+ */
+public final class WaveformRasterizer {
+
+	// Indices into the palette.
+	private static final byte BACKGROUND = 0;
+	private static final byte REFERENCE_LINE = 1;
+	private static final byte RMS = 2;
+	private static final byte WAVEFORM = 3;
+	private static final byte SILENCE = 4;
+	private static final byte ONSET = 5;
+
+	private final int width;
+	private final int height;
+
+	// The same colors as ChannelCanvas uses by default.
+	private RGB backgroundColor = new RGB(0, 0, 0);
+	private RGB referenceLineColor = new RGB(192, 192, 192);
+	private RGB waveformColor = new RGB(255, 0, 255);
+	private RGB rmsColor = new RGB(128, 0, 128);
+	private RGB silenceColor = new RGB(0, 0, 128);
+	private RGB onsetColor = new RGB(255, 255, 0);
+	private boolean rmsVisible = false;
+	private boolean markersVisible = false;
+
+	/**
+	 * @param width of the image, in pixels
+	 * @param height of the image, in pixels, shared by all the channels
+	 */
+	public WaveformRasterizer(final int width, final int height) {
+		if ( (width <= 0) || (height <= 0) ) {
+			throw new IllegalArgumentException("The image must be at least 1x1.");
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	public final int getWidth() {
+		return this.width;
+	}
+
+	public final int getHeight() {
+		return this.height;
+	}
+
+	public final void setBackgroundColor(final RGB color) {
+		this.backgroundColor = color;
+	}
+
+	public final void setReferenceLineColor(final RGB color) {
+		this.referenceLineColor = color;
+	}
+
+	public final void setWaveformColor(final RGB color) {
+		this.waveformColor = color;
+	}
+
+	public final void setRmsColor(final RGB color) {
+		this.rmsColor = color;
+	}
+
+	public final void setSilenceColor(final RGB color) {
+		this.silenceColor = color;
+	}
+
+	public final void setOnsetColor(final RGB color) {
+		this.onsetColor = color;
+	}
+
+	/**
+	 * Whether the RMS envelope is drawn under the peaks (it isn't by default).
+	 *
+	 * @param visible
+	 */
+	public final void setRmsVisible(final boolean visible) {
+		this.rmsVisible = visible;
+	}
+
+	public final boolean isRmsVisible() {
+		return this.rmsVisible;
+	}
+
+	/**
+	 * Whether the sample's silences (shaded) and onsets (lines) are drawn, if
+	 * it has a MarkerIndex (they aren't by default).
+	 *
+	 * @param visible
+	 */
+	public final void setMarkersVisible(final boolean visible) {
+		this.markersVisible = visible;
+	}
+
+	public final boolean isMarkersVisible() {
+		return this.markersVisible;
+	}
+
+	/**
+	 * Draws the whole sample.
+	 *
+	 * @param sample
+	 * @return an 8-bit, 6 color image
+	 */
+	public final ImageData render(final AudioSample sample) {
+		return this.render(sample, 0, sample.getNumberOfFrames());
+	}
+
+	/**
+	 * Draws the frames [start, end) across the width of the image.
+	 *
+	 * @param sample
+	 * @param start
+	 * @param end
+	 * @return an 8-bit, 6 color image
+	 */
+	public final ImageData render(final AudioSample sample, final long start, final long end) {
+		ImageData data = this.createImageData();
+		int channels = sample.getNumberOfChannels();
+		int bandHeight = this.height / channels;
+		if ( (bandHeight == 0) || (end <= start) ) {
+			return data;
+		}
+		WaveformColumns columns = new WaveformColumns();
+		for (int channel = 0; channel < channels; channel++) {
+			int top = channel * bandHeight;
+			// The last band takes whatever's left over.
+			int bottom = (channel == channels - 1) ? this.height : top + bandHeight;
+			this.drawBand(data, sample, channel, start, end, top, bottom, columns);
+		}
+		return data;
+	}
+
+	/**
+	 * Draws one channel's frames [start, end) across the whole image, as a
+	 * ChannelCanvas of the same size would.
+	 *
+	 * @param sample
+	 * @param channel
+	 * @param start
+	 * @param end
+	 * @return an 8-bit, 6 color image
+	 */
+	public final ImageData render(final AudioSample sample, final int channel, final long start, final long end) {
+		ImageData data = this.createImageData();
+		if (end > start) {
+			this.drawBand(data, sample, channel, start, end, 0, this.height, new WaveformColumns());
+		}
+		return data;
+	}
+
+	private final ImageData createImageData() {
+		PaletteData palette = new PaletteData(new RGB[] { this.backgroundColor, this.referenceLineColor,
+				this.rmsColor, this.waveformColor, this.silenceColor, this.onsetColor });
+		// A new ImageData is all zeros, which is already the background.
+		return new ImageData(this.width, this.height, 8, palette);
+	}
+
+	/**
+	 * Draws a channel into the rows [top, bottom) of the image.
+	 */
+	private final void drawBand(ImageData data, AudioSample sample, int channel, long start, long end,
+			int top, int bottom, WaveformColumns columns) {
+		double biggest = sample.getBiggestSample();
+		double yScale = (biggest > 0) ? (bottom - top) / (biggest * 2 * 1.2) : 0;
+		double framesPerPixel = (end - start) / (double) this.width;
+		int middle = top + (bottom - top) / 2;
+		MarkerIndex markers = this.markersVisible ? sample.getMarkerIndex() : null;
+
+		if (markers != null) {
+			this.drawSilences(data, markers, start, end, framesPerPixel, top, bottom);
+		}
+
+		int lineStart = middle * data.bytesPerLine;
+		Arrays.fill(data.data, lineStart, lineStart + this.width, REFERENCE_LINE);
+
+		int count = columns.compute(sample, channel, start, framesPerPixel, this.width, this.rmsVisible);
+
+		int previousMin = 0;
+		int previousMax = 0;
+		for (int x = 0; x < count; x++) {
+			int min = columns.min[x];
+			int max = columns.max[x];
+
+			if (this.rmsVisible) {
+				int extent = (int) (columns.rms[x] * yScale);
+				this.fillColumn(data, x, middle - extent, middle + extent, top, bottom, RMS);
+			}
+
+			// Stretch each column to meet its neighbour so there are no gaps when zoomed in.
+			int low = min;
+			int high = max;
+			if (x > 0) {
+				low = Math.min(low, previousMax);
+				high = Math.max(high, previousMin);
+			}
+			previousMin = min;
+			previousMax = max;
+			this.fillColumn(data, x, (int) (middle - (high * yScale)), (int) (middle - (low * yScale)), top, bottom, WAVEFORM);
+		}
+
+		if (markers != null) {
+			int lastX = -1;
+			for (int i = markers.findOnset(start), onsets = markers.getOnsetCount(); i < onsets; i++) {
+				long onset = markers.getOnset(i);
+				if (onset >= end) {
+					break;
+				}
+				int x = (int) ((onset - start) / framesPerPixel);
+				if (x != lastX) {
+					this.fillColumn(data, x, top, bottom - 1, top, bottom, ONSET);
+					lastX = x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shades the silences in [start, end), behind everything else.
+	 */
+	private final void drawSilences(ImageData data, MarkerIndex markers, long start, long end,
+			double framesPerPixel, int top, int bottom) {
+		byte[] pixels = data.data;
+		int stride = data.bytesPerLine;
+		for (int i = markers.findSilence(start), silences = markers.getSilenceCount(); i < silences; i++) {
+			long silenceStart = markers.getSilenceStart(i);
+			if (silenceStart >= end) {
+				break;
+			}
+			int x1 = (int) Math.max(0, (silenceStart - start) / framesPerPixel);
+			int x2 = (int) Math.min(this.width, Math.ceil((markers.getSilenceEnd(i) - start) / framesPerPixel));
+			x2 = Math.max(x2, Math.min(this.width, x1 + 1));
+			for (int y = top; y < bottom; y++) {
+				Arrays.fill(pixels, y * stride + x1, y * stride + x2, SILENCE);
+			}
+		}
+	}
+
+	/**
+	 * Sets the pixels from y1 to y2 (inclusive) of column x, clipped to the band.
+	 */
+	private final void fillColumn(ImageData data, int x, int y1, int y2, int top, int bottom, byte color) {
+		int from = Math.max(y1, top);
+		int to = Math.min(y2, bottom - 1);
+		byte[] pixels = data.data;
+		int stride = data.bytesPerLine;
+		for (int i = from * stride + x, last = to * stride + x; i <= last; i += stride) {
+			pixels[i] = color;
+		}
+	}
+
+	/**
+	 * Writes an image to a file.
+	 *
+	 * @param data
+	 * @param fileName
+	 * @param format ex. SWT.IMAGE_PNG
+	 * @throws org.eclipse.swt.SWTException if the file can't be written.
+	 */
+	public static final void save(final ImageData data, final String fileName, final int format) {
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] { data };
+		loader.save(fileName, format);
+	}
+
+	/**
+	 * The usual extension for an image format, without the dot.
+	 *
+	 * @param format ex. SWT.IMAGE_PNG
+	 * @return
+	 */
+	static final String getExtension(final int format) {
+		switch (format) {
+			case SWT.IMAGE_PNG:
+				return "png";
+			case SWT.IMAGE_GIF:
+				return "gif";
+			case SWT.IMAGE_JPEG:
+				return "jpg";
+			case SWT.IMAGE_BMP:
+				return "bmp";
+			default:
+				return "img";
+		}
+	}
+}
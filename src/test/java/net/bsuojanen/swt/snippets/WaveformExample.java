@@ -15,6 +15,12 @@ import java.io.File;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import net.bsuojanen.swt.widgets.audio.AudioSample;
+import net.bsuojanen.swt.widgets.audio.AudioSampleLoadListener;
+import net.bsuojanen.swt.widgets.audio.AudioSampleOptions;
+import net.bsuojanen.swt.widgets.audio.LiveSampleFeeder;
+import net.bsuojanen.swt.widgets.audio.MarkerOptions;
+import net.bsuojanen.swt.widgets.audio.PeakCache;
+import net.bsuojanen.swt.widgets.audio.SampleCache;
 import net.bsuojanen.swt.widgets.audio.WaveformComposite;
 
 import org.eclipse.swt.SWT;
@@ -33,6 +39,14 @@ public class WaveformExample {
 	
 	private WaveformComposite waveform;
 	private Shell shell;
+	private LiveSampleFeeder feeder;
+	
+	/**
+	 * Summaries of files we've opened before are cached, so reopening them is
+	 * instant, files opened this session are kept in memory (up to a point) and
+	 * files are decoded using every core.
+	 */
+	private final AudioSampleOptions options = new AudioSampleOptions();
 	private final static String title = "Waveform Example";
 
 	public WaveformExample() {
@@ -40,6 +54,13 @@ public class WaveformExample {
 		this.shell = new Shell(display, SWT.DIALOG_TRIM);
 		this.shell.setText(title);
 		
+		this.options.setPeakCache(new PeakCache(
+				new File(System.getProperty("java.io.tmpdir"), "haro-peaks")));
+		this.options.setSampleCache(SampleCache.getDefault());
+		// Find silences and onsets while decoding, to jump between them.
+		this.options.setMarkerOptions(new MarkerOptions());
+		this.options.setParallelism(Runtime.getRuntime().availableProcessors());
+		
 		this.shell.setLayout(new FillLayout());
 		this.createMenus();
 		this.waveform = new WaveformComposite(shell, SWT.NONE);
@@ -80,24 +101,188 @@ public class WaveformExample {
 					out("Opening file: " +file.getAbsolutePath());
 					out("File size (bytes): " + file.length());
 					
-					shell.setText(title); // reset the title
-					waveform.reset(); // reset the wave form
+					shell.setText(title + " - Loading " + file.getName()); // update the title
+					
+					stopMonitoring();
+					
+					// Decode in the background; the waveform shows the progress meanwhile.
+					waveform.load(file, options, new AudioSampleLoadListener() {
+						
+						@Override
+						public void loadCompleted(AudioSample sample) {
+							dumpSample(sample);
+							shell.setText(title + " - " + sample.getFile().getName()); // update the title
+						}
+						
+						@Override
+						public void loadFailed(File file, Exception e) {
+							if (e instanceof UnsupportedAudioFileException) {
+								// Not all formats are supported (ex. compressed audio Java Sound has no decoder for).
+								System.out.println(e.getMessage());
+							} else {
+								e.printStackTrace();
+							}
+							shell.setText(title + " - Error opening " + file.getName());
+						}
+						
+						@Override
+						public void loadCanceled(File file) {
+							out("Canceled: " + file.getAbsolutePath());
+							shell.setText(title); // reset the title
+						}
+					});
+				}
+			}});
+		// File -> Monitor
+		final MenuItem fileMonitorItem = new MenuItem(fileMenu, SWT.PUSH);
+		fileMonitorItem.setText("&Monitor Recording...\tCtrl+M");
+		fileMonitorItem.setAccelerator(SWT.CTRL + 'M');
+		fileMonitorItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				FileDialog dialog = new FileDialog(shell, SWT.OPEN);
+				dialog.setFilterExtensions(new String[] { "*.wav" });
+				
+				final String filename = dialog.open();
+				
+				if (filename != null) {
+					stopMonitoring();
+					File file = new File(filename);
 					try {
-						AudioSample sample = new AudioSample(file);
-						dumpSample(sample);
-						waveform.setSample(sample);
-						// TODO - Handle files that take a long time to process (busy indicator).
-						// Or, better yet, spawn a background thread to process.
-						shell.setText(title + " - " + file.getName()); // update the title
-					} catch (UnsupportedAudioFileException e) {
-						// Not all formats are supported yet (ex. 8-bit, a-law).
-						System.out.println(e.getMessage()); 
-						shell.setText(title + " - Error opening " + file.getName());
-					} catch(Exception e) {
+						// Follow a WAVE file that's still being recorded: one column per 256 frames, a few screens' worth kept.
+						feeder = LiveSampleFeeder.fromGrowingWaveFile(file, 256, 4096);
+						waveform.setLiveSample(feeder.getSample());
+						feeder.start();
+						shell.setText(title + " - Monitoring " + file.getName()); // update the title
+					} catch (Exception e) {
 						e.printStackTrace();
+						shell.setText(title + " - Error opening " + file.getName());
 					}
 				}
 			}});
+		// File -> Cancel
+		final MenuItem fileCancelItem = new MenuItem(fileMenu, SWT.PUSH);
+		fileCancelItem.setText("&Cancel\tEsc");
+		fileCancelItem.setAccelerator(SWT.ESC);
+		fileCancelItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				waveform.cancelLoad();
+				stopMonitoring();
+			}});
+		// View menu
+		final MenuItem viewItem = new MenuItem(menuBar, SWT.CASCADE);
+		viewItem.setText("View");
+		final Menu viewMenu = new Menu(this.shell, SWT.DROP_DOWN);
+		viewItem.setMenu(viewMenu);
+		// View -> Zoom In
+		final MenuItem viewZoomInItem = new MenuItem(viewMenu, SWT.PUSH);
+		viewZoomInItem.setText("Zoom &In\tCtrl+=");
+		viewZoomInItem.setAccelerator(SWT.CTRL + '=');
+		viewZoomInItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				zoomAroundCenter(2);
+			}});
+		// View -> Zoom Out
+		final MenuItem viewZoomOutItem = new MenuItem(viewMenu, SWT.PUSH);
+		viewZoomOutItem.setText("Zoom &Out\tCtrl+-");
+		viewZoomOutItem.setAccelerator(SWT.CTRL + '-');
+		viewZoomOutItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				zoomAroundCenter(0.5);
+			}});
+		// View -> Show RMS
+		final MenuItem viewRmsItem = new MenuItem(viewMenu, SWT.CHECK);
+		viewRmsItem.setText("Show &RMS");
+		viewRmsItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				waveform.setRmsVisible(viewRmsItem.getSelection());
+			}});
+		// View -> Show Spectrogram
+		final MenuItem viewSpectrogramItem = new MenuItem(viewMenu, SWT.CHECK);
+		viewSpectrogramItem.setText("Show &Spectrogram");
+		viewSpectrogramItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				waveform.setSpectrogramVisible(viewSpectrogramItem.getSelection());
+			}});
+		// View -> Show Markers
+		final MenuItem viewMarkersItem = new MenuItem(viewMenu, SWT.CHECK);
+		viewMarkersItem.setText("Show &Markers");
+		viewMarkersItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				waveform.setMarkersVisible(viewMarkersItem.getSelection());
+			}});
+		// View -> Next Sound, Previous Sound, Next Onset, Previous Onset
+		this.addNavigationItem(viewMenu, "Next Sou&nd\tCtrl+Right", SWT.CTRL + SWT.ARROW_RIGHT, false, true);
+		this.addNavigationItem(viewMenu, "Previous Soun&d\tCtrl+Left", SWT.CTRL + SWT.ARROW_LEFT, false, false);
+		this.addNavigationItem(viewMenu, "Next &Onset\tAlt+Right", SWT.ALT + SWT.ARROW_RIGHT, true, true);
+		this.addNavigationItem(viewMenu, "Previous Ons&et\tAlt+Left", SWT.ALT + SWT.ARROW_LEFT, true, false);
+		// View -> Run Cursor
+		final MenuItem viewCursorItem = new MenuItem(viewMenu, SWT.CHECK);
+		viewCursorItem.setText("Run &Cursor\tSpace");
+		viewCursorItem.setAccelerator(' ');
+		viewCursorItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				AudioSample sample = waveform.getSample();
+				if ( viewCursorItem.getSelection() && (sample != null) ) {
+					// Moves like a playhead would, from wherever it was (or the start of the view).
+					long from = (waveform.getCursorFrame() >= 0) ? waveform.getCursorFrame() : waveform.getVisibleStart();
+					waveform.animateCursor(from, sample.getFramerate());
+				} else {
+					waveform.stopCursorAnimation();
+				}
+			}});
+		// View -> Show All
+		final MenuItem viewShowAllItem = new MenuItem(viewMenu, SWT.PUSH);
+		viewShowAllItem.setText("Show &All\tCtrl+0");
+		viewShowAllItem.setAccelerator(SWT.CTRL + '0');
+		viewShowAllItem.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				waveform.showAll();
+			}});
+	}
+	
+	private final void addNavigationItem(Menu menu, String text, int accelerator, final boolean onset, final boolean forward) {
+		MenuItem item = new MenuItem(menu, SWT.PUSH);
+		item.setText(text);
+		item.setAccelerator(accelerator);
+		item.addListener(SWT.Selection, new Listener(){
+
+			@Override
+			public void handleEvent(Event event) {
+				boolean moved = onset ? waveform.moveCursorToOnset(forward) : waveform.moveCursorToSound(forward);
+				if (! moved) {
+					shell.getDisplay().beep();
+				}
+			}});
+	}
+	
+	private final void stopMonitoring() {
+		if (this.feeder != null) {
+			this.feeder.stop();
+			this.feeder = null;
+		}
+	}
+	
+	private final void zoomAroundCenter(double factor) {
+		long center = (this.waveform.getVisibleStart() + this.waveform.getVisibleEnd()) / 2;
+		this.waveform.zoom(factor, center);
 	}
 
 	public static void main(String[] args) {